@@ -0,0 +1,81 @@
+package com.xmdp.config;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.xmdp.entity.Shop;
+import com.xmdp.entity.User;
+import com.xmdp.mapper.ShopMapper;
+import com.xmdp.mapper.UserMapper;
+import com.xmdp.utils.BloomFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+/**
+ * 布隆过滤器，解决缓存穿透
+ * 启动时把数据库中已有的id全部加载进来，之后新增数据时再追加
+ * 在bean创建时就完成加载，保证对外提供服务之前过滤器已经是完整的，不会误拦截存在的id
+ * 其他节点新增的id通过广播追加，广播丢失时由BloomFilterRefresher定时从数据库补齐
+ */
+@Slf4j
+@Configuration
+public class BloomFilterConfig {
+
+    // 每次从数据库加载的id数量
+    private static final int LOAD_BATCH_SIZE = 10000;
+
+    @Bean
+    public BloomFilter shopBloomFilter(ShopMapper shopMapper,
+                                       @Value("${xmdp.bloom.shop.expected-insertions:1000000}") long expectedInsertions,
+                                       @Value("${xmdp.bloom.shop.fpp:0.01}") double fpp,
+                                       @Value("${xmdp.bloom.slack-ids:1000}") long slack) {
+        return build("tb_shop", shopMapper, expectedInsertions, fpp, slack);
+    }
+
+    @Bean
+    public BloomFilter userBloomFilter(UserMapper userMapper,
+                                       @Value("${xmdp.bloom.user.expected-insertions:1000000}") long expectedInsertions,
+                                       @Value("${xmdp.bloom.user.fpp:0.01}") double fpp,
+                                       @Value("${xmdp.bloom.slack-ids:1000}") long slack) {
+        return build("tb_user", userMapper, expectedInsertions, fpp, slack);
+    }
+
+    private <T> BloomFilter build(String table, BaseMapper<T> mapper, long expectedInsertions, double fpp, long slack) {
+        BloomFilter bloomFilter = new BloomFilter(expectedInsertions, fpp, slack);
+        long begin = System.currentTimeMillis();
+        long count = load(bloomFilter, mapper, 0);
+        log.info("布隆过滤器[{}]加载完成，id数量：{}，内存：{}KB，哈希函数个数：{}，耗时：{}ms", table, count,
+                bloomFilter.memoryBytes() / 1024, bloomFilter.getHashCount(), System.currentTimeMillis() - begin);
+        return bloomFilter;
+    }
+
+    /**
+     * 把id大于fromId的数据加入过滤器，加载完成后更新loadedId
+     * @return 加载的id数量
+     */
+    static <T> long load(BloomFilter bloomFilter, BaseMapper<T> mapper, long fromId) {
+        long lastId = fromId;
+        long count = 0;
+        while (true) {
+            // 按主键分批加载，select id from table where id > ? order by id limit ?
+            List<Object> ids = mapper.selectObjs(new QueryWrapper<T>()
+                    .select("id")
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + LOAD_BATCH_SIZE));
+            for (Object id : ids) {
+                lastId = ((Number) id).longValue();
+                bloomFilter.put(lastId);
+            }
+            count += ids.size();
+            if (ids.size() < LOAD_BATCH_SIZE) {
+                break;
+            }
+        }
+        bloomFilter.markLoaded(lastId);
+        return count;
+    }
+}
@@ -0,0 +1,86 @@
+package com.xmdp.config;
+
+import com.xmdp.mapper.ShopMapper;
+import com.xmdp.mapper.UserMapper;
+import com.xmdp.utils.BloomFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 定时从数据库补齐布隆过滤器
+ * 新增的id靠redis广播通知其他节点，广播不保证送达（订阅连接重连、启动加载与订阅之间新增的数据），
+ * 漏掉的id会被一直误判为不存在，所以每隔一段时间从上次加载到的id继续往后加载
+ * 自增id按分配顺序而不是提交顺序可见，往回多扫描一段，覆盖提交较慢的事务
+ */
+@Slf4j
+@Component
+public class BloomFilterRefresher implements SmartLifecycle {
+
+    // 每次往回多扫描的id数量
+    private static final long RESCAN_IDS = 1000;
+
+    @Resource
+    private BloomFilter shopBloomFilter;
+
+    @Resource
+    private BloomFilter userBloomFilter;
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Resource
+    private UserMapper userMapper;
+
+    @Value("${xmdp.bloom.refresh-seconds:30}")
+    private long refreshSeconds;
+
+    private ScheduledExecutorService scheduler;
+
+    @Override
+    public void start() {
+        if (refreshSeconds <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "bloom-filter-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::refresh, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 从上次加载到的id往后加载新数据
+     */
+    public void refresh() {
+        try {
+            long shops = BloomFilterConfig.load(shopBloomFilter, shopMapper,
+                    Math.max(0, shopBloomFilter.getLoadedId() - RESCAN_IDS));
+            long users = BloomFilterConfig.load(userBloomFilter, userMapper,
+                    Math.max(0, userBloomFilter.getLoadedId() - RESCAN_IDS));
+            log.debug("布隆过滤器补齐完成，扫描店铺：{}，用户：{}", shops, users);
+        } catch (Exception e) {
+            log.error("布隆过滤器补齐失败", e);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return scheduler != null;
+    }
+}
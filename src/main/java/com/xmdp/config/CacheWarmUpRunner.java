@@ -0,0 +1,318 @@
+package com.xmdp.config;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.xmdp.entity.Shop;
+import com.xmdp.mapper.ShopMapper;
+import com.xmdp.utils.CacheClient;
+import com.xmdp.utils.ShopCacheCodec;
+import com.xmdp.utils.ShopNameIndex;
+import com.xmdp.utils.ShopSpatialIndex;
+import com.xmdp.utils.ShopSuggestIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.xmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+import static com.xmdp.utils.RedisConstants.CACHE_SHOP_LOGICAL_TTL;
+import static com.xmdp.utils.RedisConstants.SHOP_GEO_KEY;
+
+/**
+ * 启动时的缓存预热
+ * 逻辑过期方案要求店铺提前写入redis，否则第一次访问都要同步查询数据库
+ * 同时导入店铺坐标，用于附近商铺查询；建立店铺名称的倒排索引，用于名称搜索；建立联想词索引，并定时刷新热度
+ * 按主键分页读取tb_shop，每一页用pipeline批量写入，多个批次并行
+ * ApplicationRunner执行时web容器已经启动并开始接受连接，同步预热推迟的只是就绪状态（ReadinessState.ACCEPTING_TRAFFIC）
+ * 负载均衡要根据 /actuator/health/readiness 摘流，预热完成之前才不会有请求进来
+ */
+@Slf4j
+@Component
+public class CacheWarmUpRunner implements ApplicationRunner, DisposableBean {
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private ShopSpatialIndex shopSpatialIndex;
+
+    @Resource
+    private ShopNameIndex shopNameIndex;
+
+    @Resource
+    private ShopSuggestIndex shopSuggestIndex;
+
+    @Value("${xmdp.cache.warm-up.enabled:true}")
+    private boolean enabled;
+
+    @Value("${xmdp.cache.warm-up.page-size:500}")
+    private int pageSize;
+
+    @Value("${xmdp.cache.warm-up.parallelism:4}")
+    private int parallelism;
+
+    @Value("${xmdp.cache.warm-up.block-startup:true}")
+    private boolean blockStartup;
+
+    @Value("${xmdp.cache.warm-up.shop-geo:true}")
+    private boolean shopGeo;
+
+    @Value("${xmdp.cache.warm-up.shop-name-index:true}")
+    private boolean shopNameIndexEnabled;
+
+    @Value("${xmdp.cache.warm-up.shop-suggest-index:true}")
+    private boolean shopSuggestIndexEnabled;
+
+    @Value("${xmdp.cache.warm-up.shop-suggest-refresh-minutes:10}")
+    private long shopSuggestRefreshMinutes;
+
+    // 联想词索引的定时刷新
+    private ScheduledExecutorService refresher;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        if (blockStartup) {
+            warmUp();
+            return;
+        }
+        Thread thread = new Thread(this::warmUp, "cache-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void warmUp() {
+        warmUpShops();
+        if (shopGeo) {
+            importShopGeo();
+        }
+        if (shopNameIndexEnabled) {
+            buildShopNameIndex();
+        }
+        if (shopSuggestIndexEnabled) {
+            buildShopSuggestIndex();
+            scheduleSuggestRefresh();
+        }
+    }
+
+    /**
+     * 预热所有店铺
+     * @return 写入的店铺数量
+     */
+    public int warmUpShops() {
+        long begin = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        // 限制同时在写的批次，防止数据库读得比redis写得快，把所有店铺都堆在内存里
+        Semaphore inFlight = new Semaphore(parallelism * 2);
+        List<Future<?>> futures = new ArrayList<>();
+        AtomicInteger count = new AtomicInteger();
+        try {
+            long lastId = 0;
+            while (true) {
+                // 1.按主键分页读取，select * from tb_shop where id > ? order by id limit ?
+                List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("limit " + pageSize));
+                if (shops.isEmpty()) {
+                    break;
+                }
+                lastId = shops.get(shops.size() - 1).getId();
+                // 2.并行写入redis
+                Map<String, Shop> entries = new LinkedHashMap<>(shops.size() * 2);
+                for (Shop shop : shops) {
+                    entries.put(CACHE_SHOP_KEY + shop.getId(), shop);
+                }
+                inFlight.acquire();
+                futures.add(executor.submit(() -> {
+                    try {
+                        cacheClient.setWithLogicalExpireBatch(entries, CACHE_SHOP_LOGICAL_TTL, TimeUnit.SECONDS,
+                                ShopCacheCodec.INSTANCE);
+                        count.addAndGet(entries.size());
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+                if (shops.size() < pageSize) {
+                    break;
+                }
+            }
+            // 3.等待所有批次写完，任意一批失败都会在这里抛出
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("店铺缓存预热被中断，已写入：{}", count.get());
+            return count.get();
+        } catch (Exception e) {
+            log.error("店铺缓存预热失败，已写入：{}", count.get(), e);
+            return count.get();
+        } finally {
+            executor.shutdown();
+        }
+        long cost = Math.max(1, System.currentTimeMillis() - begin);
+        log.info("店铺缓存预热完成，数量：{}，批次：{}，耗时：{}ms，吞吐：{}条/秒",
+                count.get(), futures.size(), cost, count.get() * 1000L / cost);
+        return count.get();
+    }
+
+    /**
+     * 把所有店铺的坐标按类型导入redis的GEO集合，key为 shop:geo:{typeId}，member为店铺id，同时导入本地空间索引
+     * GEOADD对已存在的member只会更新坐标，可以重复执行；店铺新增和更新时由ShopServiceImpl增量维护
+     * @return 导入的店铺数量
+     */
+    public int importShopGeo() {
+        long begin = System.currentTimeMillis();
+        int count = 0;
+        long lastId = 0;
+        while (true) {
+            // 1.按主键分页读取坐标，select id, type_id, x, y from tb_shop where id > ? order by id limit ?
+            List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .select("id", "type_id", "x", "y")
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + pageSize));
+            if (shops.isEmpty()) {
+                break;
+            }
+            lastId = shops.get(shops.size() - 1).getId();
+            // 2.按类型分组，每个类型一条GEOADD
+            Map<Long, Map<byte[], Point>> byType = new HashMap<>();
+            for (Shop shop : shops) {
+                if (shop.getTypeId() == null || shop.getX() == null || shop.getY() == null) {
+                    continue;
+                }
+                byType.computeIfAbsent(shop.getTypeId(), k -> new HashMap<>())
+                        .put(shop.getId().toString().getBytes(StandardCharsets.UTF_8), new Point(shop.getX(), shop.getY()));
+                shopSpatialIndex.put(shop.getId(), shop.getTypeId(), shop.getX(), shop.getY());
+                count++;
+            }
+            // 3.一页的所有GEOADD用pipeline一次发送
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                byType.forEach((typeId, points) -> connection.geoAdd(
+                        (SHOP_GEO_KEY + typeId).getBytes(StandardCharsets.UTF_8), points));
+                return null;
+            });
+            if (shops.size() < pageSize) {
+                break;
+            }
+        }
+        log.info("店铺坐标导入完成，数量：{}，耗时：{}ms", count, System.currentTimeMillis() - begin);
+        return count;
+    }
+
+    /**
+     * 从数据库读取所有店铺名称，重建名称倒排索引，店铺新增和更新时由ShopServiceImpl增量维护
+     * @return 索引的店铺数量
+     */
+    public int buildShopNameIndex() {
+        long begin = System.currentTimeMillis();
+        Map<Long, String> names = new HashMap<>();
+        long lastId = 0;
+        while (true) {
+            // select id, name from tb_shop where id > ? order by id limit ?
+            List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .select("id", "name")
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + pageSize));
+            if (shops.isEmpty()) {
+                break;
+            }
+            lastId = shops.get(shops.size() - 1).getId();
+            for (Shop shop : shops) {
+                names.put(shop.getId(), shop.getName());
+            }
+            if (shops.size() < pageSize) {
+                break;
+            }
+        }
+        shopNameIndex.rebuild(names);
+        log.info("店铺名称索引建立完成，数量：{}，耗时：{}ms", names.size(), System.currentTimeMillis() - begin);
+        return names.size();
+    }
+
+    /**
+     * 从数据库读取所有店铺的名称、商圈、销量和评分，重建联想词索引
+     * @return 联想词数量
+     */
+    public int buildShopSuggestIndex() {
+        long begin = System.currentTimeMillis();
+        List<Shop> all = new ArrayList<>();
+        long lastId = 0;
+        while (true) {
+            // select id, name, area, sold, score from tb_shop where id > ? order by id limit ?
+            List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .select("id", "name", "area", "sold", "score")
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + pageSize));
+            if (shops.isEmpty()) {
+                break;
+            }
+            lastId = shops.get(shops.size() - 1).getId();
+            all.addAll(shops);
+            if (shops.size() < pageSize) {
+                break;
+            }
+        }
+        shopSuggestIndex.rebuild(all);
+        log.info("联想词索引建立完成，店铺数量：{}，联想词数量：{}，耗时：{}ms",
+                all.size(), shopSuggestIndex.size(), System.currentTimeMillis() - begin);
+        return shopSuggestIndex.size();
+    }
+
+    // 销量和评分一直在变，新增和改名的店铺也要加入，定时整体重建
+    private synchronized void scheduleSuggestRefresh() {
+        if (shopSuggestRefreshMinutes <= 0 || refresher != null) {
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "shop-suggest-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                buildShopSuggestIndex();
+            } catch (Exception e) {
+                log.error("联想词索引刷新失败", e);
+            }
+        }, shopSuggestRefreshMinutes, shopSuggestRefreshMinutes, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.xmdp.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.xmdp.entity.Shop;
+import com.xmdp.utils.LocalCache;
+import com.xmdp.utils.ResponseCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地进程缓存（一级缓存），放在Redis（二级缓存）前面
+ */
+@Configuration
+public class CaffeineConfig {
+
+    // 收到失效消息之后不再写入失效之前查到的旧值，见LocalCache
+    @Bean
+    public LocalCache<Long, Shop> shopLocalCache(
+            @Value("${xmdp.cache.local.shop.maximum-size:10000}") long maximumSize,
+            @Value("${xmdp.cache.local.shop.expire-seconds:60}") long expireSeconds) {
+        return new LocalCache<>(Caffeine.newBuilder()
+                .initialCapacity(100)
+                // 按数量淘汰，防止占满堆内存
+                .maximumSize(maximumSize)
+                // 按时间淘汰，即使漏掉了失效消息，最多也只会读到expireSeconds秒的旧数据
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                .build());
+    }
+
+    // 热点店铺的本地副本，只保存探测出来的热点key
+    // shopLocalCache按写入时间过期，热点店铺每expire-seconds就会有一次请求落到redis；
+    // 这里按访问时间过期，只要还在被访问就一直保留，热点冷却后很快被淘汰；
+    // 写入时间上限兜底漏掉的失效消息，到期后由下一次请求重新读取redis
+    @Bean
+    public LocalCache<Long, Shop> hotShopCache(
+            @Value("${xmdp.cache.hot-key.local-maximum-size:1000}") long maximumSize,
+            @Value("${xmdp.cache.hot-key.local-idle-seconds:30}") long idleSeconds,
+            @Value("${xmdp.cache.hot-key.local-expire-seconds:600}") long expireSeconds) {
+        return new LocalCache<>(Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterAccess(idleSeconds, TimeUnit.SECONDS)
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                .build());
+    }
+
+    // 热点GET接口的响应缓存，见ResponseCache
+    // 优惠券列表带着秒杀库存，库存变化不发失效消息，过期时间设置得很短
+    @Bean
+    public ResponseCache responseCache(
+            @Value("${xmdp.cache.response.shop.maximum-size:10000}") long shopMaximumSize,
+            @Value("${xmdp.cache.response.shop.expire-seconds:60}") long shopExpireSeconds,
+            @Value("${xmdp.cache.response.voucher.maximum-size:10000}") long voucherMaximumSize,
+            @Value("${xmdp.cache.response.voucher.expire-seconds:5}") long voucherExpireSeconds) {
+        return new ResponseCache()
+                .route("/shop/\\d+", shopMaximumSize, shopExpireSeconds)
+                .route("/voucher/list/\\d+", voucherMaximumSize, voucherExpireSeconds);
+    }
+}
@@ -0,0 +1,24 @@
+package com.xmdp.config;
+
+import com.xmdp.utils.HotKeyDetector;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 热点key探测，少数热门店铺的请求全部落在redis的同一个key上，探测出来后固定在本地副本中（见CaffeineConfig.hotShopCache），
+ * 同时通过管理接口输出
+ */
+@Configuration
+public class HotKeyConfig {
+
+    @Bean
+    public HotKeyDetector shopHotKeyDetector(
+            @Value("${xmdp.cache.hot-key.window-seconds:10}") int windowSeconds,
+            @Value("${xmdp.cache.hot-key.buckets:10}") int buckets,
+            @Value("${xmdp.cache.hot-key.sketch-width:2048}") int sketchWidth,
+            @Value("${xmdp.cache.hot-key.threshold:200}") long threshold,
+            @Value("${xmdp.cache.hot-key.top-k:20}") int topK) {
+        return new HotKeyDetector(windowSeconds, buckets, sketchWidth, threshold, topK);
+    }
+}
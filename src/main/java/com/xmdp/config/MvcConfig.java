@@ -1,7 +1,10 @@
 package com.xmdp.config;
 
+import com.xmdp.utils.HotKeyDetector;
 import com.xmdp.utils.LoginInterceptor;
 import com.xmdp.utils.RefreshTokenInterceptor;
+import com.xmdp.utils.ResponseCache;
+import com.xmdp.utils.ResponseCacheInterceptor;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
@@ -15,6 +18,12 @@ public class MvcConfig implements WebMvcConfigurer {
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private ResponseCache responseCache;
+
+    @Resource
+    private HotKeyDetector shopHotKeyDetector;
+
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
         // 登录校验的拦截器
@@ -22,7 +31,8 @@ public class MvcConfig implements WebMvcConfigurer {
                 .excludePathPatterns(
                         // 排除不需要拦截的路经,比如登录接口，做了登录校验岂不是乱套了
                         "/shop/**",
-                        "/shop-type/**",
+                        // 店铺类型只放行查询，修改接口需要登录
+                        "/shop-type/list",
                         "/voucher/**",
                         "/upload/**",
                         "/blog/hot",
@@ -34,5 +44,10 @@ public class MvcConfig implements WebMvcConfigurer {
         // 拦截所有，token刷新的拦截器
         // new RefreshTokenInterceptor(stringRedisTemplate) 按照构造器的格式，将stringRedisTemplate传入
         registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate)).addPathPatterns("/**").order(0);
+
+        // 热点GET接口的响应缓存，具体缓存哪些路径见CaffeineConfig.responseCache
+        // 命中时请求不会到达ShopServiceImpl.queryById，店铺的访问次数在这里统计
+        registry.addInterceptor(new ResponseCacheInterceptor(responseCache, shopHotKeyDetector.pathRecorder("/shop/")))
+                .addPathPatterns("/shop/*", "/voucher/list/*").order(2);
     }
 }
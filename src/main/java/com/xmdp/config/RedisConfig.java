@@ -0,0 +1,87 @@
+package com.xmdp.config;
+
+import com.xmdp.entity.Shop;
+import com.xmdp.utils.BloomFilter;
+import com.xmdp.utils.LocalCache;
+import com.xmdp.utils.RedisIdWorker;
+import com.xmdp.utils.ResponseCache;
+import com.xmdp.utils.ShopNameIndex;
+import com.xmdp.utils.ShopSpatialIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+
+import static com.xmdp.utils.RedisConstants.BLOOM_SHOP_CHANNEL;
+import static com.xmdp.utils.RedisConstants.BLOOM_USER_CHANNEL;
+import static com.xmdp.utils.RedisConstants.CACHE_SHOP_CHANNEL;
+import static com.xmdp.utils.RedisConstants.CACHE_VOUCHER_CHANNEL;
+import static com.xmdp.utils.RedisConstants.SHOP_GEO_CHANNEL;
+import static com.xmdp.utils.RedisConstants.SHOP_NAME_CHANNEL;
+
+@Slf4j
+@Configuration
+public class RedisConfig {
+
+    // 订阅缓存失效的频道，任意一个节点更新了店铺，所有节点都会收到消息并删除自己的本地缓存
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       LocalCache<Long, Shop> shopLocalCache,
+                                                                       LocalCache<Long, Shop> hotShopCache,
+                                                                       BloomFilter shopBloomFilter,
+                                                                       BloomFilter userBloomFilter,
+                                                                       ShopSpatialIndex shopSpatialIndex,
+                                                                       ShopNameIndex shopNameIndex,
+                                                                       ResponseCache responseCache) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            log.debug("收到店铺缓存失效消息，id：{}", body);
+            Long id = Long.valueOf(body);
+            shopLocalCache.invalidate(id);
+            hotShopCache.invalidate(id);
+            responseCache.invalidate("/shop/" + id);
+        }, new ChannelTopic(CACHE_SHOP_CHANNEL));
+        // 店铺的优惠券变化，删除优惠券列表的响应缓存，消息内容为店铺id
+        container.addMessageListener((message, pattern) ->
+                responseCache.invalidate("/voucher/list/" + new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CACHE_VOUCHER_CHANNEL));
+        // 其他节点新增了店铺或用户，本节点的布隆过滤器也要追加，否则会把新数据误判为不存在
+        container.addMessageListener((message, pattern) ->
+                shopBloomFilter.put(Long.parseLong(new String(message.getBody(), StandardCharsets.UTF_8))),
+                new ChannelTopic(BLOOM_SHOP_CHANNEL));
+        container.addMessageListener((message, pattern) ->
+                userBloomFilter.put(Long.parseLong(new String(message.getBody(), StandardCharsets.UTF_8))),
+                new ChannelTopic(BLOOM_USER_CHANNEL));
+        // 店铺坐标变化，更新本节点的空间索引，消息格式：id,typeId,x,y，只有id表示移除
+        container.addMessageListener((message, pattern) -> {
+            String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(",");
+            long shopId = Long.parseLong(parts[0]);
+            if (parts.length < 4) {
+                shopSpatialIndex.remove(shopId);
+                return;
+            }
+            shopSpatialIndex.put(shopId, Long.parseLong(parts[1]), Double.parseDouble(parts[2]), Double.parseDouble(parts[3]));
+        }, new ChannelTopic(SHOP_GEO_CHANNEL));
+        // 店铺名称变化，更新本节点的名称索引，消息格式：id,name，名称中可能有逗号，只切分第一个
+        container.addMessageListener((message, pattern) -> {
+            String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(",", 2);
+            shopNameIndex.put(Long.parseLong(parts[0]), parts[1]);
+        }, new ChannelTopic(SHOP_NAME_CHANNEL));
+        return container;
+    }
+
+    // 全局唯一id，segment-size大于1时每次从redis取一段序列号在本地分配
+    @Bean
+    public RedisIdWorker redisIdWorker(StringRedisTemplate stringRedisTemplate,
+                                       @Value("${xmdp.id.segment-size:1000}") int segmentSize) {
+        return new RedisIdWorker(stringRedisTemplate, segmentSize);
+    }
+}
@@ -0,0 +1,96 @@
+package com.xmdp.config;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xmdp.dto.CachedBody;
+import com.xmdp.dto.Result;
+import com.xmdp.utils.ResponseCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * 响应缓存没有命中时，在写出响应之前把Result序列化一份写入缓存，见ResponseCacheInterceptor
+ * 最后修改时间取返回数据的updateTime，列表取最大的一个
+ */
+@Slf4j
+@ControllerAdvice
+public class ResponseCacheAdvice implements ResponseBodyAdvice<Object> {
+
+    @Resource
+    private ResponseCache responseCache;
+
+    // 与spring mvc使用同一个ObjectMapper，缓存的内容和直接返回Result一致
+    @Resource
+    private ObjectMapper objectMapper;
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return Result.class.isAssignableFrom(returnType.getParameterType());
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (!(request instanceof ServletServerHttpRequest) || !(response instanceof ServletServerHttpResponse)) {
+            return body;
+        }
+        HttpServletRequest servletRequest = ((ServletServerHttpRequest) request).getServletRequest();
+        String path = (String) servletRequest.getAttribute(ResponseCache.KEY_ATTRIBUTE);
+        // 1.不需要缓存，或者是失败的结果
+        if (path == null || !(body instanceof Result) || !Boolean.TRUE.equals(((Result) body).getSuccess())) {
+            return body;
+        }
+        // 2.序列化并写入缓存
+        CachedBody cached;
+        try {
+            cached = new CachedBody(0, objectMapper.writeValueAsBytes(body), lastModified(((Result) body).getData()));
+        } catch (Exception e) {
+            log.warn("响应序列化失败，不写入缓存，path：{}", path, e);
+            return body;
+        }
+        responseCache.put(path, cached, (Long) servletRequest.getAttribute(ResponseCache.MARK_ATTRIBUTE));
+        // 3.客户端的版本和这次的结果一致，同样返回304
+        HttpServletResponse servletResponse = ((ServletServerHttpResponse) response).getServletResponse();
+        servletResponse.setHeader("Cache-Control", "no-cache");
+        if (new ServletWebRequest(servletRequest, servletResponse).checkNotModified(cached.getEtag(), cached.getLastModified())) {
+            // 返回null时spring mvc不会写出响应体
+            return null;
+        }
+        return body;
+    }
+
+    // 数据中最大的updateTime，没有则为-1
+    private static long lastModified(Object data) {
+        Collection<?> items = data instanceof Collection ? (Collection<?>) data : Collections.singletonList(data);
+        long lastModified = -1;
+        for (Object item : items) {
+            if (item == null) {
+                continue;
+            }
+            Object updateTime = BeanUtil.getFieldValue(item, "updateTime");
+            if (updateTime instanceof LocalDateTime) {
+                long millis = ((LocalDateTime) updateTime).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                lastModified = Math.max(lastModified, millis);
+            }
+        }
+        return lastModified;
+    }
+}
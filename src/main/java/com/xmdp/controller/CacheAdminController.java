@@ -0,0 +1,101 @@
+package com.xmdp.controller;
+
+
+import com.xmdp.config.CacheWarmUpRunner;
+import com.xmdp.dto.Result;
+import com.xmdp.service.IShopTypeService;
+import com.xmdp.utils.CacheRebuildExecutor;
+import com.xmdp.utils.HotKeyDetector;
+import com.xmdp.utils.SeckillStockSync;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * <p>
+ * 缓存运维接口
+ * </p>
+ */
+@RestController
+@RequestMapping("/admin/cache")
+public class CacheAdminController {
+
+    @Resource
+    private CacheRebuildExecutor cacheRebuildExecutor;
+
+    @Resource
+    private HotKeyDetector shopHotKeyDetector;
+
+    @Resource
+    private CacheWarmUpRunner cacheWarmUpRunner;
+
+    @Resource
+    private IShopTypeService shopTypeService;
+
+    @Resource
+    private SeckillStockSync seckillStockSync;
+
+    /**
+     * 缓存重建执行器的运行状态：队列长度、重建耗时、失败次数等
+     */
+    @GetMapping("/rebuild")
+    public Result rebuildStats() {
+        return Result.ok(cacheRebuildExecutor.stats());
+    }
+
+    /**
+     * 当前的热点店铺：店铺id -> 统计窗口内的访问次数，按次数倒序
+     */
+    @GetMapping("/hot-keys")
+    public Result hotKeys() {
+        return Result.ok(shopHotKeyDetector.topK());
+    }
+
+    /**
+     * 重新导入所有店铺的坐标到GEO集合
+     * @return 导入的店铺数量
+     */
+    @PostMapping("/shop-geo")
+    public Result importShopGeo() {
+        return Result.ok(cacheWarmUpRunner.importShopGeo());
+    }
+
+    /**
+     * 重建店铺名称的倒排索引（只重建当前节点）
+     * @return 索引的店铺数量
+     */
+    @PostMapping("/shop-name-index")
+    public Result rebuildShopNameIndex() {
+        return Result.ok(cacheWarmUpRunner.buildShopNameIndex());
+    }
+
+    /**
+     * 重建搜索框的联想词索引（只重建当前节点）
+     * @return 联想词数量
+     */
+    @PostMapping("/shop-suggest-index")
+    public Result rebuildShopSuggestIndex() {
+        return Result.ok(cacheWarmUpRunner.buildShopSuggestIndex());
+    }
+
+    /**
+     * 直接修改了tb_shop_type之后调用，店铺类型列表的版本号加一，所有节点重新加载
+     * @return 新的版本号
+     */
+    @PostMapping("/shop-type")
+    public Result refreshShopType() {
+        return Result.ok(shopTypeService.refreshTypeList());
+    }
+
+    /**
+     * 立即执行一次秒杀券的预热和对账，直接修改了tb_seckill_voucher之后调用
+     * @return 检查的秒杀券数量
+     */
+    @PostMapping("/seckill-stock")
+    public Result syncSeckillStock() {
+        return Result.ok(seckillStockSync.reconcile());
+    }
+}
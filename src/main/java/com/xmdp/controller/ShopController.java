@@ -1,15 +1,13 @@
 package com.xmdp.controller;
 
 
-import cn.hutool.core.util.StrUtil;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.xmdp.dto.Result;
 import com.xmdp.entity.Shop;
 import com.xmdp.service.IShopService;
-import com.xmdp.utils.SystemConstants;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import java.util.List;
 
 /**
  * <p>
@@ -37,6 +35,16 @@ public class ShopController {
         return shopService.queryById(id);
     }
 
+    /**
+     * 批量查询商铺信息，列表页一次请求查询所有卡片
+     * @param ids 商铺id，逗号隔开，例如 ?ids=1,2,3
+     * @return 商铺列表，按ids的顺序返回，不存在的商铺会被跳过
+     */
+    @GetMapping("/batch")
+    public Result queryShopByIds(@RequestParam("ids") List<Long> ids) {
+        return shopService.queryByIds(ids);
+    }
+
     /**
      * 新增商铺信息
      * @param shop 商铺数据
@@ -44,10 +52,8 @@ public class ShopController {
      */
     @PostMapping
     public Result saveShop(@RequestBody Shop shop) {
-        // 写入数据库
-        shopService.save(shop);
-        // 返回店铺id
-        return Result.ok(shop.getId());
+        // 写入数据库，同时更新布隆过滤器
+        return shopService.saveShop(shop);
     }
 
     /**
@@ -65,19 +71,33 @@ public class ShopController {
      * 根据商铺类型分页查询商铺信息
      * @param typeId 商铺类型
      * @param current 页码
+     * @param x 经度，和y同时传入时按距离由近到远排序
+     * @param y 纬度
      * @return 商铺列表
      */
     @GetMapping("/of/type")
     public Result queryShopByType(
             @RequestParam("typeId") Integer typeId,
-            @RequestParam(value = "current", defaultValue = "1") Integer current
+            @RequestParam(value = "current", defaultValue = "1") Integer current,
+            @RequestParam(value = "x", required = false) Double x,
+            @RequestParam(value = "y", required = false) Double y
+    ) {
+        return shopService.queryShopByType(typeId, current, x, y);
+    }
+
+    /**
+     * 根据商铺类型滚动查询商铺信息，按id升序
+     * 不查询总数，也不使用offset，翻到多深的页速度都一样
+     * @param typeId 商铺类型
+     * @param lastId 上一页最后一个商铺的id，第一页不传
+     * @return 商铺列表
+     */
+    @GetMapping("/of/type/scroll")
+    public Result queryShopByTypeScroll(
+            @RequestParam("typeId") Integer typeId,
+            @RequestParam(value = "lastId", required = false) Long lastId
     ) {
-        // 根据类型分页查询
-        Page<Shop> page = shopService.query()
-                .eq("type_id", typeId)
-                .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
-        // 返回数据
-        return Result.ok(page.getRecords());
+        return shopService.queryByTypeScroll(typeId, lastId);
     }
 
     /**
@@ -91,11 +111,17 @@ public class ShopController {
             @RequestParam(value = "name", required = false) String name,
             @RequestParam(value = "current", defaultValue = "1") Integer current
     ) {
-        // 根据类型分页查询
-        Page<Shop> page = shopService.query()
-                .like(StrUtil.isNotBlank(name), "name", name)
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 返回数据
-        return Result.ok(page.getRecords());
+        // 根据名称倒排索引查询，按相关度排序
+        return shopService.queryShopByName(name, current);
+    }
+
+    /**
+     * 搜索框的联想词：名称或商圈以输入内容开头的店铺和商圈，按热度倒序
+     * @param prefix 已经输入的内容
+     * @return 联想词列表
+     */
+    @GetMapping("/suggest")
+    public Result suggest(@RequestParam(value = "prefix", required = false) String prefix) {
+        return shopService.suggest(prefix);
     }
 }
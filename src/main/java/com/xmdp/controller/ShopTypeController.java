@@ -1,15 +1,20 @@
 package com.xmdp.controller;
 
 
+import com.xmdp.dto.CachedBody;
 import com.xmdp.dto.Result;
 import com.xmdp.entity.ShopType;
 import com.xmdp.service.IShopTypeService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.annotation.Resource;
-import java.util.List;
 
 /**
  * <p>
@@ -25,10 +30,28 @@ public class ShopTypeController {
     @Resource
     private IShopTypeService typeService;
 
+    /**
+     * 店铺类型列表，返回预先序列化好的json
+     * 响应带ETag，请求头If-None-Match与ETag相同时，spring mvc直接返回304，不再发送响应体
+     * no-cache：客户端可以缓存，但每次使用前都要带着ETag确认
+     */
     @GetMapping("list")
-    public Result queryTypeList() {
-        List<ShopType> typeList = typeService
-                .query().orderByAsc("sort").list();
-        return Result.ok(typeList);
+    public ResponseEntity<byte[]> queryTypeList() {
+        CachedBody typeList = typeService.queryTypeList();
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .cacheControl(CacheControl.noCache())
+                .eTag(typeList.getEtag())
+                .body(typeList.getBody());
+    }
+
+    /**
+     * 更新店铺类型
+     * @param shopType 店铺类型数据
+     * @return 无
+     */
+    @PutMapping
+    public Result updateType(@RequestBody ShopType shopType) {
+        return typeService.updateType(shopType);
     }
 }
@@ -7,6 +7,7 @@ import com.xmdp.dto.UserDTO;
 import com.xmdp.entity.UserInfo;
 import com.xmdp.service.IUserInfoService;
 import com.xmdp.service.IUserService;
+import com.xmdp.utils.BloomFilter;
 import com.xmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
@@ -33,6 +34,9 @@ public class UserController {
     @Resource
     private IUserInfoService userInfoService;
 
+    @Resource
+    private BloomFilter userBloomFilter;
+
     /**
      * 发送手机验证码
      */
@@ -69,6 +73,10 @@ public class UserController {
 
     @GetMapping("/info/{id}")
     public Result info(@PathVariable("id") Long userId){
+        // 布隆过滤器判断用户一定不存在，不再查询数据库
+        if (!userBloomFilter.mightExist(userId)) {
+            return Result.ok();
+        }
         // 查询详情
         UserInfo info = userInfoService.getById(userId);
         if (info == null) {
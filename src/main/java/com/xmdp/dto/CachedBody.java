@@ -0,0 +1,30 @@
+package com.xmdp.dto;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import lombok.Getter;
+
+/**
+ * 预先序列化好的响应体，带版本号、ETag和最后修改时间
+ */
+@Getter
+public class CachedBody {
+    // 数据的版本号
+    private final long version;
+    // 序列化之后的json
+    private final byte[] body;
+    // 强ETag，内容的md5，内容相同的节点算出的ETag也相同
+    private final String etag;
+    // 最后修改时间，毫秒，未知为-1
+    private final long lastModified;
+
+    public CachedBody(long version, byte[] body) {
+        this(version, body, -1);
+    }
+
+    public CachedBody(long version, byte[] body, long lastModified) {
+        this.version = version;
+        this.body = body;
+        this.etag = "\"" + DigestUtil.md5Hex(body) + "\"";
+        this.lastModified = lastModified;
+    }
+}
@@ -0,0 +1,21 @@
+package com.xmdp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 搜索框的联想词
+ */
+@Data
+@AllArgsConstructor
+public class ShopSuggestion {
+    public static final String TYPE_SHOP = "shop";
+    public static final String TYPE_AREA = "area";
+
+    // 展示的文字
+    private String text;
+    // shop：店铺名称，area：商圈
+    private String type;
+    // 店铺id，商圈为null
+    private Long shopId;
+}
@@ -4,6 +4,8 @@ import com.xmdp.dto.Result;
 import com.xmdp.entity.Shop;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -16,5 +18,17 @@ public interface IShopService extends IService<Shop> {
 
     Result queryById(Long id);
 
+    Result queryByIds(List<Long> ids);
+
+    Result queryByTypeScroll(Integer typeId, Long lastId);
+
+    Result queryShopByType(Integer typeId, Integer current, Double x, Double y);
+
+    Result queryShopByName(String name, Integer current);
+
+    Result suggest(String prefix);
+
+    Result saveShop(Shop shop);
+
     Result update(Shop shop);
 }
@@ -1,5 +1,7 @@
 package com.xmdp.service;
 
+import com.xmdp.dto.CachedBody;
+import com.xmdp.dto.Result;
 import com.xmdp.entity.ShopType;
 import com.baomidou.mybatisplus.extension.service.IService;
 
@@ -13,4 +15,9 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface IShopTypeService extends IService<ShopType> {
 
+    CachedBody queryTypeList();
+
+    Result updateType(ShopType shopType);
+
+    long refreshTypeList();
 }
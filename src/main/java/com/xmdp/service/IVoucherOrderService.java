@@ -1,8 +1,11 @@
 package com.xmdp.service;
 
+import com.xmdp.dto.Result;
 import com.xmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -13,4 +16,9 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface IVoucherOrderService extends IService<VoucherOrder> {
 
+    Result seckillVoucher(Long voucherId);
+
+    boolean createVoucherOrder(VoucherOrder voucherOrder);
+
+    boolean createVoucherOrders(List<VoucherOrder> voucherOrders);
 }
@@ -0,0 +1,17 @@
+package com.xmdp.service.impl;
+
+import com.xmdp.entity.CacheOutbox;
+import com.xmdp.mapper.CacheOutboxMapper;
+import com.xmdp.service.ICacheOutboxService;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import org.springframework.stereotype.Service;
+
+/**
+ * <p>
+ *  服务实现类
+ * </p>
+ */
+@Service
+public class CacheOutboxServiceImpl extends ServiceImpl<CacheOutboxMapper, CacheOutbox> implements ICacheOutboxService {
+
+}
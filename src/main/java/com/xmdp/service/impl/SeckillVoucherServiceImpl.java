@@ -6,6 +6,8 @@ import com.xmdp.service.ISeckillVoucherService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import org.springframework.stereotype.Service;
 
+import java.util.Map;
+
 /**
  * <p>
  * 秒杀优惠券表，与优惠券是一对一关系 服务实现类
@@ -17,4 +19,11 @@ import org.springframework.stereotype.Service;
 @Service
 public class SeckillVoucherServiceImpl extends ServiceImpl<SeckillVoucherMapper, SeckillVoucher> implements ISeckillVoucherService {
 
+    /**
+     * 剩余库存（stock）和已写入数据库的订单数（sold），用于与redis对账
+     */
+    @Override
+    public Map<String, Object> queryStockAndSold(Long voucherId) {
+        return getBaseMapper().queryStockAndSold(voucherId);
+    }
 }
@@ -1,28 +1,58 @@
 package com.xmdp.service.impl;
 
-import cn.hutool.core.util.BooleanUtil;
+import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import com.xmdp.dto.Result;
 import com.xmdp.entity.Shop;
 import com.xmdp.mapper.ShopMapper;
 import com.xmdp.service.IShopService;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.xmdp.utils.RedisData;
+import com.xmdp.utils.BloomFilter;
+import com.xmdp.utils.CacheClient;
+import com.xmdp.utils.CacheMetrics;
+import com.xmdp.utils.CacheOutboxRelay;
+import com.xmdp.utils.CacheStrategy;
+import com.xmdp.utils.HotKeyDetector;
+import com.xmdp.utils.LocalCache;
+import com.xmdp.utils.ShopCacheCodec;
+import com.xmdp.utils.ShopNameIndex;
+import com.xmdp.utils.ShopSpatialIndex;
+import com.xmdp.utils.ShopSuggestIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.geo.Circle;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResult;
+import org.springframework.data.geo.GeoResults;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
 
-import java.time.LocalDateTime;
-import java.util.Objects;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.xmdp.utils.RedisConstants.*;
+import static com.xmdp.utils.SystemConstants.DEFAULT_PAGE_SIZE;
+import static com.xmdp.utils.SystemConstants.MAX_BATCH_SIZE;
+import static com.xmdp.utils.SystemConstants.MAX_PAGE_SIZE;
+import static com.xmdp.utils.SystemConstants.NEARBY_SHOP_RADIUS;
+import static com.xmdp.utils.SystemConstants.SHOP_OF_TYPE_CACHED_PAGES;
+import static com.xmdp.utils.SystemConstants.SHOP_SUGGEST_SIZE;
 
 /**
  * <p>
@@ -32,276 +62,437 @@ import static com.xmdp.utils.RedisConstants.*;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
 
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
-    @Override
-    public Result queryById(Long id) {
-        // 防止缓存穿透,这里将之前的逻辑封装入queryWithPassThrough(id)
-        // 然后在这里调用它
-        // Shop shop = queryWithPassThrough(id);
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private CacheMetrics cacheMetrics;
+
+    // 缓存失效的发件箱，见CacheOutboxRelay
+    @Resource
+    private CacheOutboxRelay cacheOutboxRelay;
+
+    // 附近商铺的进程内索引，见ShopSpatialIndex
+    @Resource
+    private ShopSpatialIndex shopSpatialIndex;
+
+    // 店铺名称的倒排索引，见ShopNameIndex
+    @Resource
+    private ShopNameIndex shopNameIndex;
+
+    // 搜索框的前缀联想，见ShopSuggestIndex
+    @Resource
+    private ShopSuggestIndex shopSuggestIndex;
 
-        // 互斥锁解决缓存击穿
-        // Shop shop = queryWithMutex(id);
+    // 附近商铺的查询方式，redis：GEO命令；local：本地空间索引
+    @Value("${xmdp.geo.engine:redis}")
+    private String geoEngine;
 
+    // 一级缓存，见CaffeineConfig
+    @Resource
+    private LocalCache<Long, Shop> shopLocalCache;
+
+    // 店铺id的布隆过滤器，见BloomFilterConfig
+    @Resource
+    private BloomFilter shopBloomFilter;
+
+    // 热点key探测和热点店铺的本地副本，见HotKeyConfig、CaffeineConfig
+    @Resource
+    private HotKeyDetector shopHotKeyDetector;
+
+    @Resource
+    private LocalCache<Long, Shop> hotShopCache;
+
+    @Override
+    public Result queryById(Long id) {
+        // 布隆过滤器判断不存在，一定不存在，直接返回，不再访问redis和数据库
+        // 紧跟在已加载的最大id之后、可能还没有加载的新id不拦截，交给缓存和数据库判断，见BloomFilter.mightExist
+        if (!shopBloomFilter.mightExist(id)) {
+            return Result.fail("店铺不存在！！");
+        }
+        // 统计访问次数，热点key优先读本地副本，副本在访问期间不会过期，不会周期性地集中打到redis的同一个key上
+        boolean hot = shopHotKeyDetector.record(id);
+        if (hot) {
+            Shop hotShop = hotShopCache.getIfPresent(id);
+            if (hotShop != null) {
+                return Result.ok(hotShop);
+            }
+        }
+        // 读取之前记下失效序号，期间收到失效消息时不写入；失效消息先删本地缓存再删副本，
+        // 副本的序号没有变化时，之后读到的本地缓存一定不是失效之前的旧值
+        long hotMark = hotShopCache.mark();
+        long mark = shopLocalCache.mark();
+        // 先查本地缓存，命中就不需要再访问redis和反序列化了
+        Shop localShop = shopLocalCache.getIfPresent(id);
+        if (localShop != null) {
+            if (hot) {
+                hotShopCache.put(id, localShop, hotMark);
+            }
+            return Result.ok(localShop);
+        }
+        // 三种缓存方案都已经封装进CacheClient，这里只需要选择策略即可
+        // 缓存空值解决缓存穿透：CacheStrategy.PASS_THROUGH
+        // 互斥锁解决缓存击穿：CacheStrategy.MUTEX
         // 逻辑过期解决缓存击穿
-        Shop shop = queryWithLogicalExpire(id);
-        // queryWithMutex(id)可能会拿到null，友好一些返回给前端一个Result
+        // 店铺缓存使用二进制编解码器，比JSON少一次解析，也不需要反射
+        Shop shop = cacheClient.query(CACHE_SHOP_KEY, id, ShopCacheCodec.INSTANCE, this::getById,
+                CACHE_SHOP_LOGICAL_TTL, TimeUnit.SECONDS, CacheStrategy.LOGICAL_EXPIRE);
+        // 可能会拿到null，友好一些返回给前端一个Result
         if (shop == null) {
             return Result.fail("店铺不存在！！");
         }
+        // 写入本地缓存，热点key同时写入热点副本
+        shopLocalCache.put(id, shop, mark);
+        if (hot) {
+            hotShopCache.put(id, shop, hotMark);
+        }
         // 7.返回
         return Result.ok(shop);
     }
 
-    // 创建一个线程池，自己写一个线程会导致经常创建和销毁会导致性能很差
-    // 这里等于一个缓存重建的执行器
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
-
-    // 逻辑过期方式解决缓存击穿
-    public Shop queryWithLogicalExpire(Long id) {
-        String key = CACHE_SHOP_KEY + id;
-        // 1.从redis查询商铺缓存
-        // 步骤6可以看出，这里的shop都是以JSON字符串的形式存储进去，
-        // 所以这里拿出来也是JSON字符串，也就导致了这段代码中使用JSONUtil类型互转了两次
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        // 2.判断是否存在
-        // 工具类StrUtil判断shopJson是否为空
-        // 这里查到""空字符串或null返回的都是false
-        if (StrUtil.isBlank(shopJson)) {
-            // 3.未命中，这里直接返回
-            return null;
-        }
-        // 4.命中，需要把JSON反序列化为对象
-        RedisData redisData = JSONUtil.toBean(shopJson, RedisData.class);
-        // 这里的data因为在RedisData中声明的就是Object，因为可能会存其他的数据进入，没有写死是Shop
-        // 所以这里可以强转成JSONObject类型（本身是Object），然后供JSONUtil.toBean()使用,
-        // 如果是Object的类型toBean()方法没有办法直接使用
-        JSONObject data = (JSONObject) redisData.getData();
-        Shop shop = JSONUtil.toBean(data, Shop.class);
-        LocalDateTime expireTime = redisData.getExpireTime();
-        // 5.判断是否过期
-        // 本句判断是指，expireTime是否在now之后，如果true就是未过期
-        if (expireTime.isAfter(LocalDateTime.now())) {
-            // 5.1.未过期，直接返回店铺信息
-            return shop;
-        }
-        // 5.2.已过期，需要缓存重建
-        // 6.缓存重建
-        // 6.1.获取互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
-        boolean isLock = tryLock(lockKey);
-        // 6.2.判断是否取锁成功
-        if (isLock) {
-
-            // 双检---------------------------------------------------------------------------
-            // （1）从redis查询商铺缓存
-            String shopJson2 = stringRedisTemplate.opsForValue().get(key);
-            // （2）（3）不需要判断是否存在，因为没有逻辑会删掉他
-            // （4）命中，需要把JSON反序列化为对象
-            RedisData redisData2 = JSONUtil.toBean(shopJson2, RedisData.class);
-            JSONObject data2 = (JSONObject) redisData2.getData();
-            Shop shop2 = JSONUtil.toBean(data2, Shop.class);
-            LocalDateTime expireTime2 = redisData.getExpireTime();
-            // （5）判断是否过期
-            if (expireTime2.isAfter(LocalDateTime.now())) {
-                // （6）未过期，意味着有人把逻辑过期的时间更新过了，一定是出了什么差错让本线程闯到了这里
-                // 直接把这段没过期的信息（已经更新过了）返回给前端
-                return shop2;
+    @Override
+    public Result queryByIds(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return Result.ok(Collections.emptyList());
+        }
+        if (ids.size() > MAX_BATCH_SIZE) {
+            return Result.fail("一次最多查询" + MAX_BATCH_SIZE + "个店铺！");
+        }
+        Map<Long, Shop> shopMap = queryShopMap(ids);
+        // 按请求的顺序返回，不存在的店铺跳过
+        List<Shop> shops = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Shop shop = shopMap.get(id);
+            if (shop != null) {
+                shops.add(shop);
             }
-            // 双检结束------------------------------------------------------------------------
-
-            // 6.3.获取锁成功，开启独立线程，实现缓存重建
-            // submit提交一个任务
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                try {
-                    // 重建缓存
-                    // 这里直接用我们为缓存预热写的saveShop2Redis，进行缓存重建
-                    // 逻辑过期时间为20s，实际应该设置成30min
-                    // this是指本对象自己的
-                    this.saveShop2Redis(id, 20L);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    // 释放锁
-                    unlock(lockKey);
-                }
-            });
-        }
-        // 6.4.返回过期的旧的商铺信息
-        return shop;
+        }
+        return Result.ok(shops);
     }
 
-    // 互斥锁方式解决缓存击穿（包含着返回空对象解决缓存穿透问题）
-    // mutex = 互斥锁
-    public Shop queryWithMutex(Long id) {
-        String key = CACHE_SHOP_KEY + id;
-        // 1.从redis查询商铺缓存
-        // 步骤6可以看出，这里的shop都是以JSON字符串的形式存储进去，
-        // 所以这里拿出来也是JSON字符串，也就导致了这段代码中使用JSONUtil类型互转了两次
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        // 2.判断是否存在
-        // 工具类StrUtil判断shopJson是否为空
-        // 这里查到""空字符串或null返回的都是false
-        if (StrUtil.isNotBlank(shopJson)) {
-            // 3.存在，直接返回
-            // 使用JSONUtil将shopJson转成java对象返回
-            return JSONUtil.toBean(shopJson, Shop.class);
-        }
-        // 判断命中的是否是空值,如果不是null，只能是""空字符串了，也就是我们用来保护数据库的空对象被命中
-        if (shopJson != null) {
-            // 返回一个错误信息
-            return null;
-        }
-
-        // 4.实现缓存重建
-        // 4.1.获取互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
-        Shop shop = null;
-        try {
-            boolean isLock = tryLock(lockKey);
-            // 4.2.判断是否获取成功
-            if (!isLock) {
-                // 4.3.失败，则休眠并重试
-                Thread.sleep(50);
-                // 重试，直接使用递归，不论多深，不论成功或是失败，都会有return直接干掉方法
-                return queryWithMutex(id);
-            }
-
-            // 4.4.如果成功，判断缓存是否重建，防止堆积的线程全部请求数据库，真正保证不被击穿
-            // 双检（DoubleCheck）---------------------------------------------------
-            String shopJson2 = stringRedisTemplate.opsForValue().get(key);
-            // (1)判断是否存在
-            // 工具类StrUtil判断shopJson是否为空
-            // 这里查到""空字符串或null返回的都是false
-            if (StrUtil.isNotBlank(shopJson2)) {
-                // (2).存在，直接返回
-                // 使用JSONUtil将shopJson转成java对象返回
-                return JSONUtil.toBean(shopJson2, Shop.class);
+    // 批量查询店铺，依次经过布隆过滤器、本地缓存、redis、数据库，返回 id -> 店铺，不存在的id不在map中
+    private Map<Long, Shop> queryShopMap(List<Long> ids) {
+        Map<Long, Shop> shopMap = new HashMap<>(ids.size() * 2);
+        List<Long> remainIds = new ArrayList<>(ids.size());
+        long mark = shopLocalCache.mark();
+        // 1.去重，过滤掉一定不存在的id，先查本地缓存
+        for (Long id : new LinkedHashSet<>(ids)) {
+            if (id == null || !shopBloomFilter.mightExist(id)) {
+                continue;
             }
-            // 判断命中的是否是空值,如果不是null，只能是""空字符串了，也就是我们用来保护数据库的空对象被命中
-            if (shopJson2 != null) {
-                // 返回一个错误信息
-                return null;
+            Shop localShop = shopLocalCache.getIfPresent(id);
+            if (localShop != null) {
+                shopMap.put(id, localShop);
+            } else {
+                remainIds.add(id);
             }
-            // 双检结束-------------------------------------------------------------------
-
-            // 4.5.双检结束，依然没有缓存，根据id查询数据库（抢到了锁，意味着缓存消失，需要重建缓存）
-            shop = getById(id);
-            // 模拟重建的延时，因为我们现在redis和mysql均在本地
-            Thread.sleep(200);
-            // 5.不存在，返回错误
-            // shop.null快捷键直接生成if判断
+        }
+        // 2.剩下的id：一次MGET查redis，未命中的一次IN查询数据库，再pipeline写回redis
+        if (!remainIds.isEmpty()) {
+            Map<Long, Shop> loaded = cacheClient.queryBatchWithLogicalExpire(CACHE_SHOP_KEY, remainIds,
+                    ShopCacheCodec.INSTANCE, this::loadShopMap, CACHE_SHOP_LOGICAL_TTL, TimeUnit.SECONDS);
+            shopLocalCache.putAll(loaded, mark);
+            shopMap.putAll(loaded);
+        }
+        return shopMap;
+    }
+
+    @Override
+    public Result queryShopByType(Integer typeId, Integer current, Double x, Double y) {
+        // 页码从1开始，不合法的页码按第一页处理，否则分页参数为负数
+        current = current == null || current < 1 ? 1 : current;
+        // 1.不需要按坐标查询，按数据库分页
+        if (x == null || y == null) {
+            Page<Shop> page = query()
+                    .eq("type_id", typeId)
+                    .page(new Page<>(current, DEFAULT_PAGE_SIZE));
+            return Result.ok(page.getRecords());
+        }
+        // 2.计算分页参数
+        int from = (current - 1) * DEFAULT_PAGE_SIZE;
+        int end = current * DEFAULT_PAGE_SIZE;
+        if ("local".equals(geoEngine)) {
+            return queryNearbyLocal(typeId, x, y, from, end);
+        }
+        // 3.查询redis，按照距离排序、分页，结果：shopId、distance
+        // GEORADIUS key x y 5000 m WITHDIST ASC COUNT end，redis 6.2之前没有GEOSEARCH，只能取前end条再跳过from条
+        GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo().radius(
+                SHOP_GEO_KEY + typeId,
+                new Circle(new Point(x, y), new Distance(NEARBY_SHOP_RADIUS)),
+                RedisGeoCommands.GeoRadiusCommandArgs.newGeoRadiusArgs().includeDistance().sortAscending().limit(end));
+        if (results == null) {
+            return Result.ok(Collections.emptyList());
+        }
+        List<GeoResult<RedisGeoCommands.GeoLocation<String>>> list = results.getContent();
+        if (list.size() <= from) {
+            // 没有下一页了
+            return Result.ok(Collections.emptyList());
+        }
+        // 4.截取 from ~ end 的部分
+        List<Long> ids = new ArrayList<>(end - from);
+        Map<Long, Double> distanceMap = new HashMap<>((end - from) * 2);
+        list.stream().skip(from).forEach(result -> {
+            Long shopId = Long.valueOf(result.getContent().getName());
+            ids.add(shopId);
+            distanceMap.put(shopId, result.getDistance().getValue());
+        });
+        return Result.ok(toNearbyShops(ids, distanceMap));
+    }
+
+    // 使用本地空间索引查询附近商铺，不访问redis
+    private Result queryNearbyLocal(Integer typeId, Double x, Double y, int from, int end) {
+        ShopSpatialIndex.Hits hits = shopSpatialIndex.radius(typeId, x, y, NEARBY_SHOP_RADIUS, end);
+        if (hits.size() <= from) {
+            return Result.ok(Collections.emptyList());
+        }
+        List<Long> ids = new ArrayList<>(end - from);
+        Map<Long, Double> distanceMap = new HashMap<>((end - from) * 2);
+        for (int i = from; i < hits.size(); i++) {
+            ids.add(hits.getId(i));
+            distanceMap.put(hits.getId(i), hits.getDistance(i));
+        }
+        return Result.ok(toNearbyShops(ids, distanceMap));
+    }
+
+    // 根据id查询店铺并设置距离，按ids的顺序返回
+    private List<Shop> toNearbyShops(List<Long> ids, Map<Long, Double> distanceMap) {
+        // 1.根据id查询店铺，走批量缓存
+        Map<Long, Shop> shopMap = queryShopMap(ids);
+        // 2.按距离的顺序返回，缓存中的店铺对象是共享的，复制一份再设置距离
+        List<Shop> shops = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Shop shop = shopMap.get(id);
             if (shop == null) {
-                // 将空值写入redis
-                stringRedisTemplate.opsForValue()
-                        .set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-                // 返回错误信息
-                return null;
+                continue;
             }
-            // 6.存在，写入redis
-            // 使用JSONUtil将shop转回JSON格式，放入value
-            stringRedisTemplate.opsForValue()
-                    .set(key, JSONUtil.toJsonStr(shop), CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        } finally {
-            // 7.释放互斥锁
-            unlock(lockKey);
-        }
-        // 8.返回
-        return shop;
+            Shop copy = BeanUtil.copyProperties(shop, Shop.class);
+            copy.setDistance(distanceMap.get(id));
+            shops.add(copy);
+        }
+        return shops;
     }
 
-    // 封装防止缓存穿透的查询方法
-    // 之后只需要调用这个方法返回shop就可以了
-    public Shop queryWithPassThrough(Long id) {
-        String key = CACHE_SHOP_KEY + id;
-        // 1.从redis查询商铺缓存
-        // 步骤6可以看出，这里的shop都是以JSON字符串的形式存储进去，
-        // 所以这里拿出来也是JSON字符串，也就导致了这段代码中使用JSONUtil类型互转了两次
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        // 2.判断是否存在
-        // 工具类StrUtil判断shopJson是否为空
-        // 这里查到""空字符串或null返回的都是false
-        if (StrUtil.isNotBlank(shopJson)) {
-            // 3.存在，直接返回
-            // 使用JSONUtil将shopJson转成java对象返回
-            return JSONUtil.toBean(shopJson, Shop.class);
-        }
-        // 判断命中的是否是空值,如果不是null，只能是""空字符串了，也就是我们用来保护数据库的空对象被命中
-        if (shopJson != null) {
-            // 返回一个错误信息
-            return null;
-        }
-        // 4.不存在，根据id查询数据库
-        Shop shop = getById(id);
-        // 5.不存在，返回错误
-        // shop.null快捷键直接生成if判断
-        if (shop == null) {
-            // 将空值写入redis
-            stringRedisTemplate.opsForValue()
-                    .set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-            // 返回错误信息
-            return null;
-        }
-        // 6.存在，写入redis
-        // 使用JSONUtil将shop转回JSON格式，放入value
-        stringRedisTemplate.opsForValue()
-                .set(key, JSONUtil.toJsonStr(shop), CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        // 7.返回
-        return shop;
+    @Override
+    public Result queryShopByName(String name, Integer current) {
+        // 页码从1开始，不合法的页码按第一页处理
+        current = current == null || current < 1 ? 1 : current;
+        // 1.没有关键字，或者索引还没有建立（例如关闭了预热），按数据库分页
+        if (StrUtil.isBlank(name) || shopNameIndex.size() == 0) {
+            Page<Shop> page = query()
+                    .like(StrUtil.isNotBlank(name), "name", name)
+                    .page(new Page<>(current, MAX_PAGE_SIZE));
+            return Result.ok(page.getRecords());
+        }
+        // 2.查询倒排索引，得到按相关度排序的店铺id
+        List<Long> ids = shopNameIndex.search(name, (current - 1) * MAX_PAGE_SIZE, MAX_PAGE_SIZE);
+        if (ids.isEmpty()) {
+            return Result.ok(Collections.emptyList());
+        }
+        // 3.根据id查询店铺，走批量缓存，按相关度的顺序返回
+        Map<Long, Shop> shopMap = queryShopMap(ids);
+        List<Shop> shops = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Shop shop = shopMap.get(id);
+            if (shop != null) {
+                shops.add(shop);
+            }
+        }
+        return Result.ok(shops);
     }
 
-    private boolean tryLock(String key) {
-        // setIfAbsent()就是setnx，IfAbsent = 如果存在
-        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS);
-        // 为了避免拆箱带来的空指针，使用hutool包中的BooleanUtil帮助我们判断其中的true or false
-        // 拆箱是指将包装类对象中的值提取出来，转换为相应的基本数据类型
-        return BooleanUtil.isTrue(flag);
+    @Override
+    public Result suggest(String prefix) {
+        // 只查内存中的联想词索引，不访问redis和数据库
+        return Result.ok(shopSuggestIndex.suggest(prefix, SHOP_SUGGEST_SIZE));
     }
 
-    private void unlock(String key) {
-        stringRedisTemplate.delete(key);
+    @Override
+    public Result queryByTypeScroll(Integer typeId, Long lastId) {
+        long cursor = lastId == null ? 0 : lastId;
+        // 1.前几页从redis读取
+        List<Shop> cached = queryFirstPagesOfType(typeId);
+        int from = indexAfter(cached, cursor);
+        // 2.缓存中剩下的数据够一页，或者缓存的已经是这个类型的全部店铺，直接返回
+        if (from + DEFAULT_PAGE_SIZE <= cached.size() || cached.size() < cachedSizeOfType()) {
+            return Result.ok(cached.subList(Math.min(from, cached.size()),
+                    Math.min(from + DEFAULT_PAGE_SIZE, cached.size())));
+        }
+        // 3.更深的页按 (type_id, id) 查询数据库，走type_id索引，不需要count，也不需要跳过前面的行
+        // select * from tb_shop where type_id = ? and id > ? order by id limit ?
+        List<Shop> shops = query()
+                .eq("type_id", typeId)
+                .gt("id", cursor)
+                .orderByAsc("id")
+                .last("limit " + DEFAULT_PAGE_SIZE)
+                .list();
+        return Result.ok(shops);
     }
 
+    // 某个类型的前SHOP_OF_TYPE_CACHED_PAGES页店铺，作为一个整体缓存在redis中
+    private List<Shop> queryFirstPagesOfType(Integer typeId) {
+        String key = CACHE_SHOP_OF_TYPE_KEY + typeId;
+        // 1.从redis查询缓存
+        String json = stringRedisTemplate.opsForValue().get(key);
+        // 2.存在，直接返回
+        if (StrUtil.isNotBlank(json)) {
+            return JSONUtil.toList(json, Shop.class);
+        }
+        // 3.不存在，查询数据库
+        List<Shop> shops = query()
+                .eq("type_id", typeId)
+                .orderByAsc("id")
+                .last("limit " + cachedSizeOfType())
+                .list();
+        // 4.写入redis，店铺新增或更新时通过发件箱删除
+        cacheClient.set(key, shops, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        return shops;
+    }
+
+    private static int cachedSizeOfType() {
+        return SHOP_OF_TYPE_CACHED_PAGES * DEFAULT_PAGE_SIZE;
+    }
+
+    // 按id升序的列表中，第一个id大于cursor的位置
+    private static int indexAfter(List<Shop> shops, long cursor) {
+        int low = 0;
+        int high = shops.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (shops.get(mid).getId() <= cursor) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // 批量查询数据库，select * from tb_shop where id in (...)
+    private Map<Long, Shop> loadShopMap(List<Long> ids) {
+        return listByIds(ids).stream().collect(Collectors.toMap(Shop::getId, Function.identity()));
+    }
 
-    public void saveShop2Redis(Long id, Long expireSeconds) throws InterruptedException {
+    // 缓存预热，逻辑过期方案要求热点key提前写入redis
+    public void saveShop2Redis(Long id, Long expireSeconds) {
+        long begin = System.nanoTime();
         // 1.查询店铺数据
-        // getById()能够直接被使用是因为继承了ServiceImpl<ShopMapper, Shop> 而又实现了implements IService<T>
-        // 也就是mybatis提供的方法
         Shop shop = getById(id);
-        Thread.sleep(200); // 模拟重建缓存的时间，因为我们是在本地操作，非常快
-        // 2.封装逻辑过期时间
-        RedisData redisData = new RedisData();
-        redisData.setData(shop);
-        // 写入时间，当前时间 + 从形参列表中传入的expireSeconds
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(expireSeconds));
-        // 3.写入Redis
-        // 使用JSONUtil将redisData从RedisData转为JSON格式
-        stringRedisTemplate.opsForValue().set(CACHE_SHOP_KEY + id, JSONUtil.toJsonStr(redisData));
+        if (shop == null) {
+            return;
+        }
+        // 2.封装逻辑过期时间，写入Redis
+        cacheClient.setWithLogicalExpire(CACHE_SHOP_KEY + id, shop, expireSeconds, TimeUnit.SECONDS,
+                ShopCacheCodec.INSTANCE);
+        cacheMetrics.recordRebuild(CACHE_SHOP_KEY, System.nanoTime() - begin);
+    }
+
+    @Override
+    @Transactional
+    public Result saveShop(Shop shop) {
+        // 1.写入数据库
+        save(shop);
+        // 2.新的id加入布隆过滤器，并通知其他节点
+        shopBloomFilter.put(shop.getId());
+        stringRedisTemplate.convertAndSend(BLOOM_SHOP_CHANNEL, shop.getId().toString());
+        // 3.该类型的分页缓存需要重新加载，新id之前被查询过时可能缓存了空值，一起删除
+        cacheOutboxRelay.record(CACHE_SHOP_OF_TYPE_KEY + shop.getTypeId(), null, null);
+        cacheOutboxRelay.record(CACHE_SHOP_KEY + shop.getId(), null, null);
+        // 4.提交后写入GEO集合和名称索引
+        Long id = shop.getId();
+        afterCommit(() -> syncShopGeo(id, null));
+        afterCommit(() -> publishShopName(id, shop.getName()));
+        return Result.ok(shop.getId());
     }
 
     // 主动更新策略
     // 新增先更新数据库，再删除缓存
     @Override
-    // 这里因为是单体系统可以用事务保持原子性
-    // 如果是分布式系统，例如更新完数据库，需要用到MQ去通知另一个系统去完成对缓存的删除操作
+    // 缓存失效记录与店铺数据在同一个事务中写入发件箱，提交后再删除缓存，
+    // 事务回滚不会误删缓存，redis暂时不可用也会重试，不会丢失失效
     @Transactional
     public Result update(Shop shop) {
         Long id = shop.getId();
         if (id == null) {
             return Result.fail("店铺id不能为空！！");
         }
+        // 更新前的类型，店铺可能被改到了其他类型，新旧两个类型的分页缓存都要删除
+        Shop old = getById(id);
+        if (old == null) {
+            return Result.fail("店铺不存在！！");
+        }
         // 1.更新数据库
         updateById(shop);
-        // 2.删除缓存
-        stringRedisTemplate.delete(CACHE_SHOP_KEY + id);
+        // 2.记录缓存失效，提交后删除redis缓存，并通知所有节点删除本地缓存
+        cacheOutboxRelay.record(CACHE_SHOP_KEY + id, CACHE_SHOP_CHANNEL, id.toString());
+        cacheOutboxRelay.record(CACHE_SHOP_OF_TYPE_KEY + old.getTypeId(), null, null);
+        if (shop.getTypeId() != null && !shop.getTypeId().equals(old.getTypeId())) {
+            cacheOutboxRelay.record(CACHE_SHOP_OF_TYPE_KEY + shop.getTypeId(), null, null);
+        }
+        // 3.坐标或类型变化后，提交后更新GEO集合
+        if (shop.getX() != null || shop.getY() != null || shop.getTypeId() != null) {
+            afterCommit(() -> syncShopGeo(id, old.getTypeId()));
+        }
+        // 4.名称变化后，提交后更新名称索引
+        if (shop.getName() != null && !shop.getName().equals(old.getName())) {
+            afterCommit(() -> publishShopName(id, shop.getName()));
+        }
         return Result.ok();
     }
 
+    // 事务提交后再更新GEO集合、名称索引等，回滚时不会写入错误的数据
+    private void afterCommit(Runnable task) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            task.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                task.run();
+            }
+        });
+    }
 
+    // 通知所有节点更新名称索引，消息格式：id,name
+    private void publishShopName(Long id, String name) {
+        if (name == null) {
+            return;
+        }
+        try {
+            stringRedisTemplate.convertAndSend(SHOP_NAME_CHANNEL, id + "," + name);
+        } catch (Exception e) {
+            log.error("通知店铺名称更新失败，id：{}", id, e);
+        }
+    }
+
+    // 以数据库中的最新数据为准，更新店铺在GEO集合中的坐标，类型变了还要从旧类型的集合中移除
+    // 再通知所有节点更新本地空间索引；失败只记录日志，下次启动时的全量导入会修正
+    private void syncShopGeo(Long id, Long oldTypeId) {
+        try {
+            Shop shop = getById(id);
+            if (shop == null) {
+                return;
+            }
+            if (oldTypeId != null && !oldTypeId.equals(shop.getTypeId())) {
+                stringRedisTemplate.opsForGeo().remove(SHOP_GEO_KEY + oldTypeId, id.toString());
+            }
+            if (shop.getTypeId() != null && shop.getX() != null && shop.getY() != null) {
+                stringRedisTemplate.opsForGeo().add(SHOP_GEO_KEY + shop.getTypeId(),
+                        new Point(shop.getX(), shop.getY()), id.toString());
+                stringRedisTemplate.convertAndSend(SHOP_GEO_CHANNEL,
+                        id + "," + shop.getTypeId() + "," + shop.getX() + "," + shop.getY());
+            } else {
+                stringRedisTemplate.convertAndSend(SHOP_GEO_CHANNEL, id.toString());
+            }
+        } catch (Exception e) {
+            log.error("更新店铺坐标失败，id：{}", id, e);
+        }
+    }
 }
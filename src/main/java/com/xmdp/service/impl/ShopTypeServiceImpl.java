@@ -1,10 +1,30 @@
 package com.xmdp.service.impl;
 
+import cn.hutool.core.util.StrUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xmdp.dto.CachedBody;
+import com.xmdp.dto.Result;
 import com.xmdp.entity.ShopType;
 import com.xmdp.mapper.ShopTypeMapper;
 import com.xmdp.service.IShopTypeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.xmdp.utils.RedisConstants.CACHE_SHOP_TYPE_LIST_KEY;
+import static com.xmdp.utils.RedisConstants.CACHE_SHOP_TYPE_TTL;
+import static com.xmdp.utils.RedisConstants.CACHE_SHOP_TYPE_VERSION_KEY;
 
 /**
  * <p>
@@ -14,7 +34,105 @@ import org.springframework.stereotype.Service;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> implements IShopTypeService {
 
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    // 与spring mvc使用同一个ObjectMapper，序列化结果和直接返回Result一致
+    @Resource
+    private ObjectMapper objectMapper;
+
+    @Value("${xmdp.cache.shop-type.check-interval-ms:1000}")
+    private long checkIntervalMillis;
+
+    // 本地的店铺类型列表
+    private volatile CachedBody local;
+    // 上一次检查redis版本号的时间
+    private volatile long checkedAt;
+
+    /**
+     * 店铺类型列表，很少变化，三级读取：本地 -> redis -> 数据库
+     * redis中 cache:shop-type:version 为版本号，修改类型时加一；列表按版本号保存在 cache:shop-type:list:{version}
+     * 修改之前读到旧数据的请求只会写入旧版本的key，不会覆盖新版本
+     */
+    @Override
+    public CachedBody queryTypeList() {
+        CachedBody current = local;
+        long now = System.currentTimeMillis();
+        // 1.本地有数据，且在检查间隔内，直接返回
+        if (current != null && now - checkedAt < checkIntervalMillis) {
+            return current;
+        }
+        try {
+            // 2.检查版本号，没有变化继续使用本地数据
+            String version = stringRedisTemplate.opsForValue().get(CACHE_SHOP_TYPE_VERSION_KEY);
+            long v = StrUtil.isBlank(version) ? 0 : Long.parseLong(version);
+            if (current == null || current.getVersion() != v) {
+                current = loadTypeList(v);
+                local = current;
+            }
+            checkedAt = now;
+            return current;
+        } catch (RuntimeException e) {
+            // 3.redis不可用，有本地数据就继续使用
+            if (current != null) {
+                log.warn("检查店铺类型版本号失败，使用本地数据", e);
+                return current;
+            }
+            throw e;
+        }
+    }
+
+    // 读取指定版本的列表，redis中没有就查询数据库并写入
+    private CachedBody loadTypeList(long version) {
+        String key = CACHE_SHOP_TYPE_LIST_KEY + version;
+        String json = stringRedisTemplate.opsForValue().get(key);
+        if (StrUtil.isBlank(json)) {
+            List<ShopType> typeList = query().orderByAsc("sort").list();
+            try {
+                json = objectMapper.writeValueAsString(Result.ok(typeList));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException(e);
+            }
+            // 旧版本的key不会再被读取，靠过期时间清理
+            stringRedisTemplate.opsForValue().set(key, json, CACHE_SHOP_TYPE_TTL, TimeUnit.HOURS);
+        }
+        return new CachedBody(version, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    @Transactional
+    public Result updateType(ShopType shopType) {
+        if (shopType.getId() == null) {
+            return Result.fail("店铺类型id不能为空");
+        }
+        // 1.更新数据库
+        updateById(shopType);
+        // 2.事务提交后修改版本号，所有节点在检查间隔内读到新列表
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    refreshTypeList();
+                }
+            });
+        } else {
+            refreshTypeList();
+        }
+        return Result.ok();
+    }
+
+    /**
+     * 版本号加一，直接修改了数据库时也可以手动调用
+     * @return 新的版本号
+     */
+    @Override
+    public long refreshTypeList() {
+        Long version = stringRedisTemplate.opsForValue().increment(CACHE_SHOP_TYPE_VERSION_KEY);
+        log.info("店铺类型列表版本号：{}", version);
+        return version == null ? 0 : version;
+    }
 }
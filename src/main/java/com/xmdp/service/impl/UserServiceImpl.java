@@ -12,6 +12,7 @@ import com.xmdp.dto.UserDTO;
 import com.xmdp.entity.User;
 import com.xmdp.mapper.UserMapper;
 import com.xmdp.service.IUserService;
+import com.xmdp.utils.BloomFilter;
 import com.xmdp.utils.RegexUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
@@ -44,6 +45,10 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    // 用户id的布隆过滤器，见BloomFilterConfig
+    @Resource
+    private BloomFilter userBloomFilter;
+
     // 基于Redis实现短信验证码发送
     @Override
     public Result sendCode(String phone, HttpSession session) {
@@ -177,6 +182,9 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         // 2.保存用户
         // 这里save()也是mybytis的方法
         save(user);
+        // 3.新的id加入布隆过滤器，并通知其他节点
+        userBloomFilter.put(user.getId());
+        stringRedisTemplate.convertAndSend(BLOOM_USER_CHANNEL, user.getId().toString());
         return user;
     }
 }
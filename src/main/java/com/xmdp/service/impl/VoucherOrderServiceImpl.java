@@ -1,10 +1,35 @@
 package com.xmdp.service.impl;
 
+import com.xmdp.dto.Result;
+import com.xmdp.entity.SeckillVoucher;
 import com.xmdp.entity.VoucherOrder;
 import com.xmdp.mapper.VoucherOrderMapper;
+import com.xmdp.service.ISeckillVoucherService;
 import com.xmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.xmdp.utils.RedisIdWorker;
+import com.xmdp.utils.SeckillStockSync;
+import com.xmdp.utils.SingleFlight;
+import com.xmdp.utils.UserHolder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.xmdp.utils.RedisConstants.SECKILL_MISSING_KEY;
+import static com.xmdp.utils.RedisConstants.SECKILL_MISSING_TTL;
+import static com.xmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.xmdp.utils.RedisConstants.SECKILL_ORDER_STREAM;
+import static com.xmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
 
 /**
  * <p>
@@ -17,4 +42,147 @@ import org.springframework.stereotype.Service;
 @Service
 public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, VoucherOrder> implements IVoucherOrderService {
 
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> SECKILL_SCRIPT;
+
+    static {
+        SECKILL_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
+        SECKILL_SCRIPT.setResultType(List.class);
+    }
+
+    // seckill.lua的返回值
+    private static final int SECKILL_OK = 0;
+    private static final int SECKILL_NOT_LOADED = 5;
+    private static final String[] SECKILL_ERRORS = {null, "库存不足", "不能重复下单", "秒杀尚未开始", "秒杀已经结束"};
+
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisIdWorker redisIdWorker;
+
+    @Resource
+    private SeckillStockSync seckillStockSync;
+
+    // 同一个秒杀券只有一个线程从数据库加载
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    /**
+     * 秒杀下单
+     * 1.lua脚本在redis中原子地校验时间、库存、一人一单，并扣减库存、记录下单用户，同时把订单写入redis stream
+     * 2.校验通过后脚本才生成订单id的序列号，返回订单id，由SeckillOrderConsumer从stream中读取订单写入数据库
+     * 请求线程只访问redis，秒杀券在新增时和开始前已经写入redis（SeckillStockSync），不在redis中时才从数据库加载，
+     * 数据库中也不存在时在redis中记录一段时间，期间同一个id的请求不再查询数据库
+     */
+    @Override
+    public Result seckillVoucher(Long voucherId) {
+        Long userId = UserHolder.getUser().getId();
+        // 订单id的时间戳和序列号key，不访问redis
+        RedisIdWorker.Ticket ticket = redisIdWorker.ticket("order");
+        // 1.执行lua脚本
+        List<?> result = executeSeckill(voucherId, userId, ticket);
+        if (code(result) == SECKILL_NOT_LOADED) {
+            // 2.秒杀券还不在redis中，从数据库加载后再执行一次
+            if (!loadSeckillVoucher(voucherId)) {
+                return Result.fail("秒杀券不存在");
+            }
+            result = executeSeckill(voucherId, userId, ticket);
+        }
+        int code = code(result);
+        if (code != SECKILL_OK) {
+            return Result.fail(code < SECKILL_ERRORS.length ? SECKILL_ERRORS[code] : "秒杀券不存在");
+        }
+        // 3.脚本生成的序列号拼接成订单id
+        return Result.ok(ticket.toId(((Number) result.get(1)).longValue()));
+    }
+
+    private List<?> executeSeckill(Long voucherId, Long userId, RedisIdWorker.Ticket ticket) {
+        return stringRedisTemplate.execute(SECKILL_SCRIPT,
+                Arrays.asList(SECKILL_STOCK_KEY + voucherId, SECKILL_ORDER_KEY + voucherId, SECKILL_ORDER_STREAM,
+                        ticket.getKey()),
+                userId.toString(), String.valueOf(System.currentTimeMillis()),
+                String.valueOf(ticket.getTimestamp()), voucherId.toString());
+    }
+
+    private static int code(List<?> result) {
+        return result == null || result.isEmpty() ? SECKILL_NOT_LOADED : ((Number) result.get(0)).intValue();
+    }
+
+    // 兜底：秒杀券不在redis中（预热之前redis数据丢失）时从数据库加载，已经存在时不覆盖
+    private boolean loadSeckillVoucher(Long voucherId) {
+        // 1.最近确认过不是秒杀券，不再查询数据库
+        String missingKey = SECKILL_MISSING_KEY + voucherId;
+        if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(missingKey))) {
+            return false;
+        }
+        // 2.同一个秒杀券只有一个线程查询数据库
+        return singleFlight.execute(SECKILL_STOCK_KEY + voucherId, () -> {
+            SeckillVoucher seckillVoucher = seckillVoucherService.getById(voucherId);
+            if (seckillVoucher == null) {
+                // 不存在，记录一段时间，新增秒杀券时由SeckillStockSync.preload删除
+                stringRedisTemplate.opsForValue().set(missingKey, "", SECKILL_MISSING_TTL, TimeUnit.MINUTES);
+                return false;
+            }
+            seckillStockSync.preload(seckillVoucher);
+            return true;
+        }, 3, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 扣减数据库库存并保存订单，在同一个事务中执行
+     * (user_id, voucher_id)唯一索引兜底一人一单，重复的订单抛出DuplicateKeyException
+     * @return 数据库库存不足时返回false
+     */
+    @Override
+    @Transactional
+    public boolean createVoucherOrder(VoucherOrder voucherOrder) {
+        // 1.扣减库存，stock > 0 兜底，即使redis中的库存出错也不会超卖
+        boolean success = seckillVoucherService.update()
+                .setSql("stock = stock - 1")
+                .eq("voucher_id", voucherOrder.getVoucherId())
+                .gt("stock", 0)
+                .update();
+        if (!success) {
+            return false;
+        }
+        // 2.保存订单
+        save(voucherOrder);
+        return true;
+    }
+
+    /**
+     * 批量写入订单，整批在一个事务中执行
+     * 1.按秒杀券汇总，每个秒杀券只执行一次 stock = stock - n
+     * 2.所有订单用一条多行insert写入
+     * 任意一个秒杀券库存不足时整批回滚并返回false；有重复订单时抛出DuplicateKeyException，同样整批回滚
+     * @return 数据库库存不足时返回false
+     */
+    @Override
+    @Transactional
+    public boolean createVoucherOrders(List<VoucherOrder> voucherOrders) {
+        // 1.按秒杀券id排序后扣减，多个节点同时写入时按相同的顺序加行锁，不会死锁
+        Map<Long, Integer> counts = new TreeMap<>();
+        for (VoucherOrder voucherOrder : voucherOrders) {
+            counts.merge(voucherOrder.getVoucherId(), 1, Integer::sum);
+        }
+        for (Map.Entry<Long, Integer> entry : counts.entrySet()) {
+            boolean success = seckillVoucherService.update()
+                    .setSql("stock = stock - " + entry.getValue())
+                    .eq("voucher_id", entry.getKey())
+                    .ge("stock", entry.getValue())
+                    .update();
+            if (!success) {
+                // 前面已经扣减的库存随事务回滚
+                TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+                return false;
+            }
+        }
+        // 2.多行insert
+        getBaseMapper().insertBatch(voucherOrders);
+        return true;
+    }
 }
@@ -7,12 +7,18 @@ import com.xmdp.mapper.VoucherMapper;
 import com.xmdp.entity.SeckillVoucher;
 import com.xmdp.service.ISeckillVoucherService;
 import com.xmdp.service.IVoucherService;
+import com.xmdp.utils.SeckillStockSync;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
 import java.util.List;
 
+import static com.xmdp.utils.RedisConstants.CACHE_VOUCHER_CHANNEL;
+
 /**
  * <p>
  *  服务实现类
@@ -27,6 +33,12 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     @Resource
     private ISeckillVoucherService seckillVoucherService;
 
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private SeckillStockSync seckillStockSync;
+
     @Override
     public Result queryVoucherOfShop(Long shopId) {
         // 查询优惠券信息
@@ -35,6 +47,12 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         return Result.ok(vouchers);
     }
 
+    @Override
+    public void addVoucher(Voucher voucher) {
+        save(voucher);
+        publishVoucherChange(voucher.getShopId());
+    }
+
     @Override
     @Transactional
     public void addSeckillVoucher(Voucher voucher) {
@@ -47,5 +65,30 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
+        // 事务提交后把库存、开始和结束时间写入redis，秒杀开始时不需要再查询数据库
+        afterCommit(() -> seckillStockSync.preload(seckillVoucher));
+        publishVoucherChange(voucher.getShopId());
+    }
+
+    // 事务提交后通知所有节点删除这个店铺优惠券列表的响应缓存
+    private void publishVoucherChange(Long shopId) {
+        if (shopId == null) {
+            return;
+        }
+        afterCommit(() -> stringRedisTemplate.convertAndSend(CACHE_VOUCHER_CHANNEL, shopId.toString()));
+    }
+
+    // 有事务时在提交之后执行，回滚时不执行；没有事务时立即执行
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 }
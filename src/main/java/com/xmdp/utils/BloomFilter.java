@@ -0,0 +1,130 @@
+package com.xmdp.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 基于位数组的布隆过滤器，只存id（long），用来在访问redis和数据库之前拦截一定不存在的id
+ * 判断为不存在 -> 一定不存在；判断为存在 -> 可能存在（有误判率）
+ * 线程安全：位数组使用AtomicLongArray，put和mightContain可以并发调用
+ * 新增的id通过广播追加，消息可能丢失，所以另外记录从数据库加载到的最大id（loadedId），
+ * loadedId之后slack个id以内的新id还没有被确认加载过，判断为不存在时不能直接拦截，见mightExist
+ */
+public class BloomFilter {
+
+    // 位数组，每个long存64位
+    private final AtomicLongArray bits;
+    // 位数组的总位数
+    private final long bitSize;
+    // 哈希函数的个数
+    private final int hashCount;
+    // 从数据库加载到的最大id，只增不减
+    private final AtomicLong loadedId = new AtomicLong();
+    // loadedId之后放行的id个数
+    private final long slack;
+
+    /**
+     * @param expectedInsertions 预计插入的元素个数
+     * @param fpp 期望的误判率，例如0.01
+     */
+    public BloomFilter(long expectedInsertions, double fpp) {
+        this(expectedInsertions, fpp, 0);
+    }
+
+    /**
+     * @param slack loadedId之后放行的id个数，覆盖两次定时补齐之间新增、广播又丢失了的数据
+     */
+    public BloomFilter(long expectedInsertions, double fpp, long slack) {
+        this.slack = Math.max(0, slack);
+        if (expectedInsertions <= 0) {
+            expectedInsertions = 1;
+        }
+        if (fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("误判率必须在(0, 1)之间：" + fpp);
+        }
+        // 最优位数 m = -n * ln(p) / (ln2)^2
+        long m = (long) (-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        // 向上取整到64的倍数
+        int words = (int) Math.max(1, (m + 63) >>> 6);
+        this.bits = new AtomicLongArray(words);
+        this.bitSize = (long) words << 6;
+        // 最优哈希个数 k = m / n * ln2
+        this.hashCount = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+    }
+
+    public void put(long id) {
+        long h1 = mix(id);
+        long h2 = mix(h1);
+        for (int i = 0; i < hashCount; i++) {
+            // 双重哈希模拟k个哈希函数：h1 + i * h2
+            long index = ((h1 + i * h2) & Long.MAX_VALUE) % bitSize;
+            setBit(index);
+        }
+    }
+
+    public boolean mightContain(long id) {
+        long h1 = mix(id);
+        long h2 = mix(h1);
+        for (int i = 0; i < hashCount; i++) {
+            long index = ((h1 + i * h2) & Long.MAX_VALUE) % bitSize;
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 用于拦截请求：在mightContain的基础上，(loadedId, loadedId + slack]之间的id也放行，
+     * 它们可能是还没有加载、广播又丢失了的新数据，交给缓存和数据库判断；
+     * 更大的id直接拦截，否则随意构造的大id都会穿透到数据库
+     */
+    public boolean mightExist(long id) {
+        if (mightContain(id)) {
+            return true;
+        }
+        long loaded = loadedId.get();
+        return id > loaded && id - loaded <= slack;
+    }
+
+    /**
+     * 从数据库加载到了id，id及之前的数据都已经在过滤器中
+     */
+    public void markLoaded(long id) {
+        loadedId.accumulateAndGet(id, Math::max);
+    }
+
+    public long getLoadedId() {
+        return loadedId.get();
+    }
+
+    /**
+     * 位数组占用的内存，单位字节
+     */
+    public long memoryBytes() {
+        return bitSize >>> 3;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    private void setBit(long index) {
+        int word = (int) (index >>> 6);
+        long mask = 1L << index;
+        long old;
+        do {
+            old = bits.get(word);
+            if ((old & mask) != 0) {
+                return;
+            }
+        } while (!bits.compareAndSet(word, old, old | mask));
+    }
+
+    // splitmix64的混淆函数，让连续的id也能均匀分布
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,512 @@
+package com.xmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static com.xmdp.utils.RedisConstants.CACHE_NULL_TTL;
+import static com.xmdp.utils.RedisConstants.LOCK_SHOP_TTL;
+
+/**
+ * 通用的缓存工具类
+ * 把ShopServiceImpl中的缓存穿透、互斥锁、逻辑过期三种写法抽取出来，
+ * 通过泛型 + 函数式接口（查数据库的逻辑由调用者传入），任何实体都可以直接复用
+ */
+@Slf4j
+@Component
+public class CacheClient {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    // 缓存重建的执行器，有界队列 + 去重，见CacheRebuildExecutor
+    private final CacheRebuildExecutor cacheRebuildExecutor;
+
+    // 分布式锁，带持有者标识和看门狗
+    private final RedisLockFactory redisLockFactory;
+
+    // 命中率、重建耗时等监控指标
+    private final CacheMetrics cacheMetrics;
+
+    // 进程内请求合并，同一个key同时只有一个线程访问redis和数据库
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    // 其他线程等待同一个key加载结果的最长时间，互斥锁策略会在此基础上加上等锁的时间，见singleFlightTimeout
+    @Value("${xmdp.cache.single-flight-timeout-ms:3000}")
+    private long singleFlightTimeoutMillis;
+
+    // TTL随机增加的比例，例如0.1表示在原TTL的基础上随机增加0~10%，避免同一批写入的key同时过期
+    @Value("${xmdp.cache.ttl-jitter:0.1}")
+    private double ttlJitter;
+
+    // 提前刷新（XFetch）的系数，越大越早刷新，0表示关闭
+    @Value("${xmdp.cache.early-refresh-beta:1.0}")
+    private double earlyRefreshBeta;
+
+    public CacheClient(StringRedisTemplate stringRedisTemplate, CacheRebuildExecutor cacheRebuildExecutor,
+                       RedisLockFactory redisLockFactory, CacheMetrics cacheMetrics) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.cacheRebuildExecutor = cacheRebuildExecutor;
+        this.redisLockFactory = redisLockFactory;
+        this.cacheMetrics = cacheMetrics;
+    }
+
+    /**
+     * 将任意对象序列化为JSON并存储在string类型的key中，并设置TTL
+     */
+    public void set(String key, Object value, Long time, TimeUnit unit) {
+        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), ttlMillis(time, unit), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 将任意对象序列化为JSON并存储在string类型的key中，并设置逻辑过期时间（Redis中的key本身永不过期）
+     */
+    @SuppressWarnings("unchecked")
+    public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
+        setWithLogicalExpire(key, value, time, unit, new JsonCacheCodec<>((Class<Object>) Object.class));
+    }
+
+    /**
+     * 使用指定的编解码器写入，并设置逻辑过期时间
+     */
+    public <R> void setWithLogicalExpire(String key, R value, Long time, TimeUnit unit, CacheCodec<R> codec) {
+        // 设置逻辑过期，以epoch毫秒交给编解码器
+        long expireMillis = System.currentTimeMillis() + ttlMillis(time, unit);
+        byte[] bytes = codec.encode(value, expireMillis);
+        // 写入Redis，二进制数据不能走String序列化，直接用底层连接写入
+        stringRedisTemplate.execute((RedisCallback<Object>) connection ->
+                connection.set(rawKey(key), bytes));
+    }
+
+    /**
+     * 批量写入逻辑过期数据，使用pipeline一次网络往返写入所有key，用于缓存预热
+     * @param entries key -> 数据
+     */
+    public <R> void setWithLogicalExpireBatch(Map<String, R> entries, Long time, TimeUnit unit, CacheCodec<R> codec) {
+        long now = System.currentTimeMillis();
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map.Entry<String, R> entry : entries.entrySet()) {
+                // 每个key单独计算随机TTL，同一批预热的key不会在同一时刻过期
+                long expireMillis = now + ttlMillis(time, unit);
+                connection.set(rawKey(entry.getKey()), codec.encode(entry.getValue(), expireMillis));
+            }
+            // pipeline中的回调必须返回null
+            return null;
+        });
+    }
+
+    /**
+     * 按照指定策略查询缓存
+     * @param keyPrefix key前缀，例如 cache:shop:
+     * @param id 数据id
+     * @param type 返回值类型
+     * @param dbFallback 缓存未命中时查询数据库的逻辑
+     * @param time 缓存时间（逻辑过期策略下为逻辑过期时间）
+     * @param unit 时间单位
+     * @param strategy 缓存策略
+     */
+    public <R, ID> R query(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback,
+                           Long time, TimeUnit unit, CacheStrategy strategy) {
+        return query(keyPrefix, id, new JsonCacheCodec<>(type), dbFallback, time, unit, strategy);
+    }
+
+    /**
+     * 按照指定策略查询缓存，codec只在逻辑过期策略下生效，其余策略仍然以JSON格式存储
+     */
+    public <R, ID> R query(String keyPrefix, ID id, CacheCodec<R> codec, Function<ID, R> dbFallback,
+                           Long time, TimeUnit unit, CacheStrategy strategy) {
+        long begin = System.nanoTime();
+        try {
+            // 同一个key的并发请求合并为一次，其他线程等待结果；redis锁只负责协调多个节点
+            return singleFlight.execute(keyPrefix + id, () -> {
+                switch (strategy) {
+                    case MUTEX:
+                        return queryWithMutex(keyPrefix, id, codec.type(), dbFallback, time, unit);
+                    case LOGICAL_EXPIRE:
+                        return queryWithLogicalExpire(keyPrefix, id, codec, dbFallback, time, unit);
+                    case PASS_THROUGH:
+                    default:
+                        return queryWithPassThrough(keyPrefix, id, codec.type(), dbFallback, time, unit);
+                }
+            }, singleFlightTimeout(strategy), TimeUnit.MILLISECONDS);
+        } finally {
+            cacheMetrics.recordQuery(keyPrefix, strategy, System.nanoTime() - begin);
+        }
+    }
+
+    /**
+     * 其他线程等待single-flight结果的最长时间
+     * 互斥锁策略下，加载的线程最多要等LOCK_SHOP_TTL秒才能拿到锁，之后还要查询数据库，
+     * 等待时间比它短的话，加载线程还在正常排队，其他线程就已经超时失败了
+     */
+    private long singleFlightTimeout(CacheStrategy strategy) {
+        if (strategy == CacheStrategy.MUTEX) {
+            return TimeUnit.SECONDS.toMillis(LOCK_SHOP_TTL) + singleFlightTimeoutMillis;
+        }
+        return singleFlightTimeoutMillis;
+    }
+
+    /**
+     * 缓存空值解决缓存穿透
+     */
+    public <R, ID> R queryWithPassThrough(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback,
+                                          Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        // 1.从redis查询缓存
+        String json = stringRedisTemplate.opsForValue().get(key);
+        // 2.判断是否存在
+        if (StrUtil.isNotBlank(json)) {
+            // 3.存在，直接返回
+            cacheMetrics.count(keyPrefix, CacheOutcome.HIT);
+            return JSONUtil.toBean(json, type);
+        }
+        // 判断命中的是否是空值
+        if (json != null) {
+            cacheMetrics.count(keyPrefix, CacheOutcome.NULL_HIT);
+            return null;
+        }
+        cacheMetrics.count(keyPrefix, CacheOutcome.MISS);
+        // 4.不存在，根据id查询数据库
+        R r = dbFallback.apply(id);
+        // 5.不存在，将空值写入redis，返回null
+        if (r == null) {
+            stringRedisTemplate.opsForValue().set(key, "", ttlMillis(CACHE_NULL_TTL, TimeUnit.MINUTES), TimeUnit.MILLISECONDS);
+            return null;
+        }
+        // 6.存在，写入redis
+        this.set(key, r, time, unit);
+        return r;
+    }
+
+    /**
+     * 互斥锁解决缓存击穿（同时缓存空值解决缓存穿透）
+     */
+    public <R, ID> R queryWithMutex(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback,
+                                    Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        // 1.从redis查询缓存
+        String json = stringRedisTemplate.opsForValue().get(key);
+        // 2.判断是否存在
+        if (StrUtil.isNotBlank(json)) {
+            cacheMetrics.count(keyPrefix, CacheOutcome.HIT);
+            return JSONUtil.toBean(json, type);
+        }
+        // 判断命中的是否是空值
+        if (json != null) {
+            cacheMetrics.count(keyPrefix, CacheOutcome.NULL_HIT);
+            return null;
+        }
+        cacheMetrics.count(keyPrefix, CacheOutcome.MISS);
+        // 3.实现缓存重建
+        // 3.1.获取互斥锁，锁的key与缓存的key一一对应
+        ILock lock = redisLockFactory.getLock(lockKey(keyPrefix, id));
+        // 最多等待LOCK_SHOP_TTL秒
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(LOCK_SHOP_TTL);
+        // 3.2.获取锁失败，说明其他节点正在重建，休眠后重新查询缓存，用循环代替递归，避免栈溢出
+        boolean contended = false;
+        while (!lock.tryLock()) {
+            // 同一次查询只记录一次锁竞争
+            if (!contended) {
+                contended = true;
+                cacheMetrics.count(keyPrefix, CacheOutcome.LOCK_CONTENDED);
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new RuntimeException("获取缓存重建锁超时，key：" + key);
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            String retryJson = stringRedisTemplate.opsForValue().get(key);
+            if (StrUtil.isNotBlank(retryJson)) {
+                return JSONUtil.toBean(retryJson, type);
+            }
+            if (retryJson != null) {
+                return null;
+            }
+        }
+        // 拿到锁之后才进入try，保证finally中释放的一定是自己的锁
+        R r;
+        try {
+            // 3.3.成功，双检，防止其他线程已经重建好了缓存
+            String json2 = stringRedisTemplate.opsForValue().get(key);
+            if (StrUtil.isNotBlank(json2)) {
+                return JSONUtil.toBean(json2, type);
+            }
+            if (json2 != null) {
+                return null;
+            }
+            // 3.4.根据id查询数据库
+            long begin = System.nanoTime();
+            r = dbFallback.apply(id);
+            // 4.不存在，将空值写入redis
+            if (r == null) {
+                stringRedisTemplate.opsForValue().set(key, "", ttlMillis(CACHE_NULL_TTL, TimeUnit.MINUTES), TimeUnit.MILLISECONDS);
+                return null;
+            }
+            // 5.存在，写入redis
+            this.set(key, r, time, unit);
+            cacheMetrics.recordRebuild(keyPrefix, System.nanoTime() - begin);
+        } finally {
+            // 6.释放锁
+            lock.unlock();
+        }
+        return r;
+    }
+
+    /**
+     * 逻辑过期解决缓存击穿，数据应当提前通过setWithLogicalExpire预热
+     */
+    public <R, ID> R queryWithLogicalExpire(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback,
+                                            Long time, TimeUnit unit) {
+        return queryWithLogicalExpire(keyPrefix, id, new JsonCacheCodec<>(type), dbFallback, time, unit);
+    }
+
+    /**
+     * 逻辑过期解决缓存击穿，使用指定的编解码器读写
+     */
+    @SuppressWarnings("unchecked")
+    public <R, ID> R queryWithLogicalExpire(String keyPrefix, ID id, CacheCodec<R> codec, Function<ID, R> dbFallback,
+                                            Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        // 1.从redis查询缓存
+        byte[] bytes = getRaw(key);
+        // 2.命中的是空值，数据库中不存在
+        if (bytes != null && bytes.length == 0) {
+            cacheMetrics.count(keyPrefix, CacheOutcome.NULL_HIT);
+            return null;
+        }
+        RedisData redisData = bytes == null ? null : codec.decode(bytes);
+        if (redisData == null) {
+            // 3.未命中，说明还没有预热，或者数据更新后缓存被删除了（见CacheOutboxRelay），
+            // 同步查询数据库并写回，并发请求已经由singleFlight合并
+            cacheMetrics.count(keyPrefix, CacheOutcome.MISS);
+            R r = dbFallback.apply(id);
+            if (r != null) {
+                this.setWithLogicalExpire(key, r, time, unit, codec);
+            } else {
+                // 数据库中也不存在，写入短时间的空值，防止缓存穿透
+                setNull(key);
+            }
+            return r;
+        }
+        // 4.命中，解码器已经把data转成了真正的类型
+        R r = (R) redisData.getData();
+        LocalDateTime expireTime = redisData.getExpireTime();
+        // 5.判断是否过期
+        if (expireTime.isAfter(LocalDateTime.now())) {
+            cacheMetrics.count(keyPrefix, CacheOutcome.HIT);
+            // 5.1.未过期，但是快要过期了，按概率提前异步刷新，热点key会在过期之前就被刷新
+            if (shouldRefreshEarly(keyPrefix, expireTime)) {
+                rebuildAsync(keyPrefix, id, codec, dbFallback, time, unit, expireTime);
+            }
+            // 5.2.直接返回
+            return r;
+        }
+        // 5.3.已过期，需要缓存重建
+        cacheMetrics.count(keyPrefix, CacheOutcome.STALE);
+        // 6.提交异步重建任务，锁在重建线程中获取和释放
+        rebuildAsync(keyPrefix, id, codec, dbFallback, time, unit, expireTime);
+        // 7.返回过期的数据
+        return r;
+    }
+
+    /**
+     * 批量查询逻辑过期的数据
+     * 1.一次MGET读出所有key
+     * 2.已过期的照常返回旧数据，并异步重建
+     * 3.缓存中不存在的id，一次性交给dbBatchFallback查询数据库，再用pipeline写回redis
+     * @param ids 数据id
+     * @param dbBatchFallback 批量查询数据库的逻辑，返回 id -> 数据，不存在的id不放入map
+     * @return id -> 数据，不存在的id不在map中
+     */
+    @SuppressWarnings("unchecked")
+    public <R, ID> Map<ID, R> queryBatchWithLogicalExpire(String keyPrefix, List<ID> ids, CacheCodec<R> codec,
+                                                        Function<List<ID>, Map<ID, R>> dbBatchFallback,
+                                                        Long time, TimeUnit unit) {
+        Map<ID, R> result = new HashMap<>(ids.size() * 2);
+        if (ids.isEmpty()) {
+            return result;
+        }
+        // 1.MGET一次查询所有key
+        byte[][] rawKeys = new byte[ids.size()][];
+        for (int i = 0; i < ids.size(); i++) {
+            rawKeys[i] = rawKey(keyPrefix + ids.get(i));
+        }
+        List<byte[]> values = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.mGet(rawKeys));
+        List<ID> misses = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < ids.size(); i++) {
+            ID id = ids.get(i);
+            byte[] bytes = values == null ? null : values.get(i);
+            if (bytes != null && bytes.length == 0) {
+                cacheMetrics.count(keyPrefix, CacheOutcome.NULL_HIT);
+                continue;
+            }
+            RedisData redisData = bytes == null ? null : codec.decode(bytes);
+            // 2.未命中，稍后统一查询数据库
+            if (redisData == null) {
+                cacheMetrics.count(keyPrefix, CacheOutcome.MISS);
+                misses.add(id);
+                continue;
+            }
+            R r = (R) redisData.getData();
+            if (r != null) {
+                result.put(id, r);
+            }
+            boolean expired = !redisData.getExpireTime().isAfter(now);
+            cacheMetrics.count(keyPrefix, expired ? CacheOutcome.STALE : CacheOutcome.HIT);
+            // 3.已过期或者需要提前刷新，返回旧数据，异步重建
+            if (expired || shouldRefreshEarly(keyPrefix, redisData.getExpireTime())) {
+                rebuildAsync(keyPrefix, id, codec,
+                        key -> dbBatchFallback.apply(Collections.singletonList(key)).get(key), time, unit,
+                        redisData.getExpireTime());
+            }
+        }
+        if (misses.isEmpty()) {
+            return result;
+        }
+        // 4.未命中的id一次性查询数据库，select * from table where id in (...)
+        Map<ID, R> loaded = dbBatchFallback.apply(misses);
+        // 5.pipeline写回redis，数据库中不存在的id写入空值
+        Map<String, R> entries = new HashMap<>(loaded.size() * 2);
+        List<String> nullKeys = new ArrayList<>();
+        for (ID id : misses) {
+            R r = loaded.get(id);
+            if (r != null) {
+                entries.put(keyPrefix + id, r);
+            } else {
+                nullKeys.add(keyPrefix + id);
+            }
+        }
+        if (!entries.isEmpty()) {
+            setWithLogicalExpireBatch(entries, time, unit, codec);
+        }
+        if (!nullKeys.isEmpty()) {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (String nullKey : nullKeys) {
+                    connection.pSetEx(rawKey(nullKey), ttlMillis(CACHE_NULL_TTL, TimeUnit.MINUTES), new byte[0]);
+                }
+                return null;
+            });
+        }
+        result.putAll(loaded);
+        return result;
+    }
+
+    /**
+     * 异步重建逻辑过期的缓存
+     * 同一个节点内由CacheRebuildExecutor去重，多个节点之间由分布式锁互斥，
+     * 获取锁和释放锁都在重建线程中完成，锁的持有者就是真正执行重建的线程
+     * @param seenExpireTime 调用方读到的逻辑过期时间，拿到锁后发现已经比它新了，说明其他节点刚刚重建过
+     */
+    private <R, ID> void rebuildAsync(String keyPrefix, ID id, CacheCodec<R> codec, Function<ID, R> dbFallback,
+                                      Long time, TimeUnit unit, LocalDateTime seenExpireTime) {
+        String key = keyPrefix + id;
+        boolean submitted = cacheRebuildExecutor.submit(key, () -> {
+            // 1.获取互斥锁，获取失败说明其他节点正在重建
+            ILock lock = redisLockFactory.getLock(lockKey(keyPrefix, id));
+            if (!lock.tryLock()) {
+                cacheMetrics.count(keyPrefix, CacheOutcome.LOCK_CONTENDED);
+                return;
+            }
+            try {
+                // 2.双检，缓存可能已经被其他节点重建过了
+                RedisData current = getLogical(key, codec);
+                if (current != null && current.getExpireTime().isAfter(seenExpireTime)) {
+                    return;
+                }
+                // 3.查询数据库，重建缓存
+                long begin = System.nanoTime();
+                R r = dbFallback.apply(id);
+                if (r == null) {
+                    // 数据已经被删除，与未命中时相同，写入短时间的空值，不再按逻辑过期反复刷新
+                    setNull(key);
+                    return;
+                }
+                this.setWithLogicalExpire(key, r, time, unit, codec);
+                cacheMetrics.recordRebuild(keyPrefix, System.nanoTime() - begin);
+            } finally {
+                // 4.释放锁
+                lock.unlock();
+            }
+        });
+        if (submitted) {
+            cacheMetrics.count(keyPrefix, CacheOutcome.REBUILD);
+        }
+    }
+
+    // 读取逻辑过期的数据，不存在、空值或格式无法识别时返回null
+    private <R> RedisData getLogical(String key, CacheCodec<R> codec) {
+        byte[] bytes = getRaw(key);
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        return codec.decode(bytes);
+    }
+
+    private byte[] getRaw(String key) {
+        return stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey(key)));
+    }
+
+    // 数据库中不存在，写入空值，CACHE_NULL_TTL之后过期
+    private void setNull(String key) {
+        stringRedisTemplate.opsForValue().set(key, "", ttlMillis(CACHE_NULL_TTL, TimeUnit.MINUTES), TimeUnit.MILLISECONDS);
+    }
+
+    private static byte[] rawKey(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // 加上随机抖动之后的TTL，单位毫秒
+    private long ttlMillis(Long time, TimeUnit unit) {
+        long millis = unit.toMillis(time);
+        if (ttlJitter <= 0) {
+            return millis;
+        }
+        return millis + (long) (millis * ttlJitter * ThreadLocalRandom.current().nextDouble());
+    }
+
+    /**
+     * 概率性提前刷新（XFetch算法）
+     * 当 now - delta * beta * ln(random) >= expireTime 时刷新，random取(0, 1]
+     * delta是这个缓存最近重建一次（查数据库 + 写redis）的耗时，每个key前缀分别统计，见CacheMetrics；
+     * 越接近过期时间、重建越慢，提前刷新的概率越大；
+     * 每次请求独立判断，所以通常只有少数请求会触发刷新
+     */
+    private boolean shouldRefreshEarly(String keyPrefix, LocalDateTime expireTime) {
+        if (earlyRefreshBeta <= 0) {
+            return false;
+        }
+        double delta = cacheMetrics.getRebuildLatencyMillis(keyPrefix);
+        if (delta <= 0) {
+            return false;
+        }
+        long expireMillis = expireTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        double gap = -delta * earlyRefreshBeta * Math.log(1 - ThreadLocalRandom.current().nextDouble());
+        return System.currentTimeMillis() + gap >= expireMillis;
+    }
+
+    // 锁的key：lock: + 缓存key去掉cache:前缀，例如 cache:shop:1 -> lock:shop:1
+    private static String lockKey(String keyPrefix, Object id) {
+        return "lock:" + StrUtil.removePrefix(keyPrefix, "cache:") + id;
+    }
+}
@@ -0,0 +1,26 @@
+package com.xmdp.utils;
+
+/**
+ * 逻辑过期缓存的编解码器，决定数据以什么格式存进redis
+ * 默认实现是JsonCacheCodec，热点数据可以提供更紧凑的二进制实现，例如ShopCacheCodec
+ */
+public interface CacheCodec<T> {
+
+    /**
+     * 缓存的数据类型
+     */
+    Class<T> type();
+
+    /**
+     * 编码
+     * @param value 要缓存的数据
+     * @param expireMillis 逻辑过期时间，epoch毫秒
+     */
+    byte[] encode(T value, long expireMillis);
+
+    /**
+     * 解码，返回的RedisData中data已经是type()类型的对象
+     * 无法识别的格式（例如新版本写入的数据）返回null，按缓存未命中处理
+     */
+    RedisData decode(byte[] bytes);
+}
@@ -0,0 +1,117 @@
+package com.xmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 缓存的监控指标，通过actuator的 /actuator/metrics 查看
+ * xmdp.cache.requests：查询次数，按cache（缓存名）和outcome（结果）区分
+ * xmdp.cache.query：CacheClient.query的耗时，按cache和strategy区分
+ * xmdp.cache.rebuild：重建一次缓存（查数据库 + 写redis）的耗时
+ * xmdp.cache.rebuild.queue：排队中的重建任务数
+ * 缓存名由key前缀得到，例如 cache:shop: -> shop
+ */
+@Component
+public class CacheMetrics {
+
+    // 重建耗时的指数加权平均中新样本的权重，越大越快跟上耗时的变化
+    private static final double REBUILD_LATENCY_ALPHA = 0.2;
+
+    private final MeterRegistry registry;
+
+    // key前缀 -> 按CacheOutcome.ordinal()排列的计数器，避免每次查询都拼接字符串去注册表中查找
+    private final Map<String, Counter[]> counters = new ConcurrentHashMap<>();
+    // key前缀 -> 按CacheStrategy.ordinal()排列的计时器
+    private final Map<String, Timer[]> queryTimers = new ConcurrentHashMap<>();
+    // key前缀 -> 重建计时器
+    private final Map<String, Timer> rebuildTimers = new ConcurrentHashMap<>();
+    // key前缀 -> 最近重建耗时的指数加权平均，毫秒，保存double的bits
+    private final Map<String, AtomicLong> rebuildLatencies = new ConcurrentHashMap<>();
+
+    public CacheMetrics(MeterRegistry registry, CacheRebuildExecutor cacheRebuildExecutor) {
+        this.registry = registry;
+        Gauge.builder("xmdp.cache.rebuild.queue", cacheRebuildExecutor, CacheRebuildExecutor::getQueueDepth)
+                .description("排队中的缓存重建任务数")
+                .register(registry);
+    }
+
+    /**
+     * 记录一次查询结果
+     */
+    public void count(String keyPrefix, CacheOutcome outcome) {
+        counters.computeIfAbsent(keyPrefix, this::newCounters)[outcome.ordinal()].increment();
+    }
+
+    /**
+     * 记录一次查询的耗时
+     */
+    public void recordQuery(String keyPrefix, CacheStrategy strategy, long nanos) {
+        queryTimers.computeIfAbsent(keyPrefix, this::newQueryTimers)[strategy.ordinal()]
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录一次缓存重建的耗时
+     */
+    public void recordRebuild(String keyPrefix, long nanos) {
+        rebuildTimers.computeIfAbsent(keyPrefix, prefix -> Timer.builder("xmdp.cache.rebuild")
+                .tag("cache", cacheName(prefix))
+                .description("缓存重建耗时")
+                .publishPercentileHistogram()
+                .register(registry)).record(nanos, TimeUnit.NANOSECONDS);
+        double millis = nanos / 1e6;
+        rebuildLatencies.computeIfAbsent(keyPrefix, prefix -> new AtomicLong()).updateAndGet(bits -> {
+            double avg = Double.longBitsToDouble(bits);
+            return Double.doubleToLongBits(avg == 0 ? millis : avg + REBUILD_LATENCY_ALPHA * (millis - avg));
+        });
+    }
+
+    /**
+     * 最近重建一次缓存的耗时，只统计真正查询了数据库的重建，单位毫秒，还没有重建过时返回0
+     */
+    public double getRebuildLatencyMillis(String keyPrefix) {
+        AtomicLong bits = rebuildLatencies.get(keyPrefix);
+        return bits == null ? 0 : Double.longBitsToDouble(bits.get());
+    }
+
+    private Counter[] newCounters(String keyPrefix) {
+        CacheOutcome[] outcomes = CacheOutcome.values();
+        Counter[] result = new Counter[outcomes.length];
+        for (CacheOutcome outcome : outcomes) {
+            result[outcome.ordinal()] = Counter.builder("xmdp.cache.requests")
+                    .tag("cache", cacheName(keyPrefix))
+                    .tag("outcome", outcome.getTag())
+                    .description("缓存查询次数")
+                    .register(registry);
+        }
+        return result;
+    }
+
+    private Timer[] newQueryTimers(String keyPrefix) {
+        CacheStrategy[] strategies = CacheStrategy.values();
+        Timer[] result = new Timer[strategies.length];
+        for (CacheStrategy strategy : strategies) {
+            result[strategy.ordinal()] = Timer.builder("xmdp.cache.query")
+                    .tag("cache", cacheName(keyPrefix))
+                    .tag("strategy", strategy.name().toLowerCase())
+                    .description("缓存查询耗时")
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+        return result;
+    }
+
+    // cache:shop: -> shop
+    private static String cacheName(String keyPrefix) {
+        return StrUtil.removeSuffix(StrUtil.removePrefix(keyPrefix, "cache:"), ":");
+    }
+}
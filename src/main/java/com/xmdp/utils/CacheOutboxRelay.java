@@ -0,0 +1,307 @@
+package com.xmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.xmdp.entity.CacheOutbox;
+import com.xmdp.service.ICacheOutboxService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 缓存失效的发件箱（transactional outbox）
+ * 1.更新数据库的同一个事务中，把要删除的缓存key写入tb_cache_outbox，事务回滚时失效记录也一起回滚
+ * 2.事务提交后唤醒中继线程，批量删除缓存并发布失效消息；另有定时轮询兜底，redis短暂不可用时也不会丢失
+ * 3.失败的记录按指数退避重试，重试次数用尽后标记为失败，等待人工处理
+ * 4.第一次删除成功后，延迟一段时间再删除一次（延迟双删），清理掉删除期间被并发读请求写回的旧数据
+ * 多个节点可能处理到同一条记录，删除缓存是幂等的，不影响正确性
+ * 中继线程在所有bean创建完成后由start启动，stop时停止；启动之前写入的记录由第一次轮询处理
+ */
+@Slf4j
+@Component
+public class CacheOutboxRelay implements SmartLifecycle {
+
+    // 待删除
+    private static final int STATUS_PENDING = 0;
+    // 已删除一次，等待延迟双删
+    private static final int STATUS_DELETED_ONCE = 1;
+    // 已完成
+    private static final int STATUS_DONE = 2;
+    // 重试次数用尽
+    private static final int STATUS_FAILED = 3;
+
+    private final ICacheOutboxService cacheOutboxService;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    // 每批处理的记录数
+    private final int batchSize;
+    // 延迟双删的间隔
+    private final long doubleDeleteDelayMillis;
+    // 最大重试次数
+    private final int maxRetries;
+    // 第一次重试的间隔，之后每次翻倍
+    private final long retryBaseMillis;
+    // 已完成的记录保留多久
+    private final long retentionHours;
+    // 定时轮询的间隔
+    private final long pollIntervalMillis;
+
+    // 单线程处理，定时轮询和事务提交后的唤醒不会并发执行
+    private volatile ScheduledExecutorService scheduler;
+    // 已经有一次唤醒在排队，合并后续的唤醒
+    private final AtomicBoolean wakeUpPending = new AtomicBoolean();
+
+    // 最早一条待删除记录已经等待的时间，毫秒
+    private volatile long lagMillis;
+    // 待删除的记录数
+    private volatile long pendingCount;
+
+    // 从写入发件箱到第一次删除缓存的延迟
+    private final Timer deliveryTimer;
+    private final Counter failedCounter;
+
+    public CacheOutboxRelay(ICacheOutboxService cacheOutboxService, StringRedisTemplate stringRedisTemplate,
+                            MeterRegistry meterRegistry,
+                            @Value("${xmdp.cache.outbox.batch-size:100}") int batchSize,
+                            @Value("${xmdp.cache.outbox.poll-interval-ms:1000}") long pollIntervalMillis,
+                            @Value("${xmdp.cache.outbox.double-delete-delay-ms:1000}") long doubleDeleteDelayMillis,
+                            @Value("${xmdp.cache.outbox.max-retries:10}") int maxRetries,
+                            @Value("${xmdp.cache.outbox.retry-base-ms:1000}") long retryBaseMillis,
+                            @Value("${xmdp.cache.outbox.retention-hours:24}") long retentionHours) {
+        this.cacheOutboxService = cacheOutboxService;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.batchSize = batchSize;
+        this.doubleDeleteDelayMillis = doubleDeleteDelayMillis;
+        this.maxRetries = maxRetries;
+        this.retryBaseMillis = retryBaseMillis;
+        this.retentionHours = retentionHours;
+        this.pollIntervalMillis = pollIntervalMillis;
+
+        Gauge.builder("xmdp.cache.outbox.lag", this, relay -> relay.lagMillis / 1000.0)
+                .description("最早一条待删除的缓存失效记录已经等待的时间")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("xmdp.cache.outbox.pending", this, relay -> relay.pendingCount)
+                .description("待删除的缓存失效记录数")
+                .register(meterRegistry);
+        this.deliveryTimer = Timer.builder("xmdp.cache.outbox.delivery")
+                .description("从写入发件箱到删除缓存的延迟")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("xmdp.cache.outbox.failed")
+                .description("重试次数用尽的缓存失效记录数")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cache-outbox-relay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::relaySafely, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+        executor.scheduleWithFixedDelay(this::cleanSafely, 1, 1, TimeUnit.HOURS);
+        scheduler = executor;
+    }
+
+    /**
+     * 记录一次缓存失效，需要在更新数据库的事务中调用
+     * @param cacheKey 要删除的缓存key
+     * @param channel 删除后要通知的频道，可以为null
+     * @param message 通知的内容
+     */
+    public void record(String cacheKey, String channel, String message) {
+        // 1.与业务数据在同一个事务中写入发件箱
+        CacheOutbox outbox = new CacheOutbox()
+                .setCacheKey(cacheKey)
+                .setChannel(channel)
+                .setMessage(message)
+                .setStatus(STATUS_PENDING)
+                .setRetryCount(0)
+                .setNextRetryTime(LocalDateTime.now());
+        cacheOutboxService.save(outbox);
+        // 2.事务提交后立即唤醒中继线程，不用等到下一次轮询
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    wakeUp();
+                }
+            });
+        } else {
+            wakeUp();
+        }
+    }
+
+    private void wakeUp() {
+        ScheduledExecutorService executor = scheduler;
+        // 还没有启动或者已经停止，记录留在发件箱中，由启动后的轮询处理
+        if (executor == null) {
+            return;
+        }
+        if (wakeUpPending.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::relaySafely);
+            } catch (RejectedExecutionException e) {
+                wakeUpPending.set(false);
+            }
+        }
+    }
+
+    private void relaySafely() {
+        wakeUpPending.set(false);
+        try {
+            relay();
+        } catch (Exception e) {
+            // 数据库不可用等情况，等待下一次轮询
+            log.error("缓存失效记录处理失败", e);
+        }
+    }
+
+    // 循环处理到期的记录，直到没有更多记录或者redis出错
+    private void relay() {
+        List<CacheOutbox> batch;
+        do {
+            batch = cacheOutboxService.query()
+                    .in("status", STATUS_PENDING, STATUS_DELETED_ONCE)
+                    .le("next_retry_time", LocalDateTime.now())
+                    .orderByAsc("id")
+                    .last("limit " + batchSize)
+                    .list();
+            if (batch.isEmpty()) {
+                break;
+            }
+            try {
+                deleteAndPublish(batch);
+            } catch (Exception e) {
+                onFailure(batch, e);
+                break;
+            }
+            onSuccess(batch);
+        } while (batch.size() == batchSize);
+        updateLag();
+    }
+
+    // 一次pipeline删除整批key，并发布失效消息
+    private void deleteAndPublish(List<CacheOutbox> batch) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (CacheOutbox outbox : batch) {
+                connection.del(outbox.getCacheKey().getBytes(StandardCharsets.UTF_8));
+                if (outbox.getChannel() != null) {
+                    connection.publish(outbox.getChannel().getBytes(StandardCharsets.UTF_8),
+                            String.valueOf(outbox.getMessage()).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            return null;
+        });
+    }
+
+    private void onSuccess(List<CacheOutbox> batch) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> firstIds = new ArrayList<>();
+        List<Long> secondIds = new ArrayList<>();
+        for (CacheOutbox outbox : batch) {
+            if (outbox.getStatus() == STATUS_PENDING) {
+                firstIds.add(outbox.getId());
+                deliveryTimer.record(Duration.between(outbox.getCreateTime(), now).toMillis(), TimeUnit.MILLISECONDS);
+            } else {
+                secondIds.add(outbox.getId());
+            }
+        }
+        // 1.第一次删除完成，延迟一段时间后再删除一次
+        if (!firstIds.isEmpty()) {
+            cacheOutboxService.update()
+                    .set("status", STATUS_DELETED_ONCE)
+                    .set("next_retry_time", now.plusNanos(TimeUnit.MILLISECONDS.toNanos(doubleDeleteDelayMillis)))
+                    .in("id", firstIds)
+                    .update();
+        }
+        // 2.第二次删除完成
+        if (!secondIds.isEmpty()) {
+            cacheOutboxService.update()
+                    .set("status", STATUS_DONE)
+                    .in("id", secondIds)
+                    .update();
+        }
+    }
+
+    // 整批失败，逐条按指数退避安排重试
+    private void onFailure(List<CacheOutbox> batch, Exception e) {
+        log.warn("删除缓存失败，{}条记录稍后重试", batch.size(), e);
+        LocalDateTime now = LocalDateTime.now();
+        List<CacheOutbox> updates = new ArrayList<>(batch.size());
+        for (CacheOutbox outbox : batch) {
+            int retryCount = outbox.getRetryCount() + 1;
+            CacheOutbox update = new CacheOutbox().setId(outbox.getId()).setRetryCount(retryCount);
+            if (retryCount >= maxRetries) {
+                update.setStatus(STATUS_FAILED);
+                failedCounter.increment();
+                log.error("缓存失效记录重试次数用尽，id：{}，key：{}", outbox.getId(), outbox.getCacheKey());
+            } else {
+                // 1、2、4、8...倍的基础间隔，最多1分钟
+                long delay = Math.min(retryBaseMillis << Math.min(retryCount - 1, 16), 60_000L);
+                update.setNextRetryTime(now.plusNanos(TimeUnit.MILLISECONDS.toNanos(delay)));
+            }
+            updates.add(update);
+        }
+        cacheOutboxService.updateBatchById(updates);
+    }
+
+    // 统计最早一条待删除记录的等待时间和待删除的记录数
+    private void updateLag() {
+        CacheOutbox oldest = cacheOutboxService.query()
+                .eq("status", STATUS_PENDING)
+                .orderByAsc("id")
+                .last("limit 1")
+                .one();
+        lagMillis = oldest == null ? 0 : Math.max(0, Duration.between(oldest.getCreateTime(), LocalDateTime.now()).toMillis());
+        pendingCount = oldest == null ? 0 : cacheOutboxService.query().eq("status", STATUS_PENDING).count();
+    }
+
+    // 清理已完成的记录
+    private void cleanSafely() {
+        try {
+            cacheOutboxService.remove(new QueryWrapper<CacheOutbox>()
+                    .eq("status", STATUS_DONE)
+                    .lt("update_time", LocalDateTime.now().minusHours(retentionHours)));
+        } catch (Exception e) {
+            log.error("清理缓存失效记录失败", e);
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return scheduler != null;
+    }
+}
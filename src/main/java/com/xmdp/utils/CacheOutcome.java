@@ -0,0 +1,41 @@
+package com.xmdp.utils;
+
+/**
+ * 一次缓存查询的结果，作为监控指标的outcome标签
+ */
+public enum CacheOutcome {
+    /**
+     * 命中，且数据未过期
+     */
+    HIT("hit"),
+    /**
+     * 未命中，需要查询数据库（或者逻辑过期方案下直接返回null）
+     */
+    MISS("miss"),
+    /**
+     * 命中了缓存的空值，缓存穿透被拦截
+     */
+    NULL_HIT("null-hit"),
+    /**
+     * 命中了逻辑过期的旧数据
+     */
+    STALE("stale"),
+    /**
+     * 提交了异步重建任务
+     */
+    REBUILD("rebuild"),
+    /**
+     * 获取重建锁失败，其他线程或节点正在重建
+     */
+    LOCK_CONTENDED("lock-contended");
+
+    private final String tag;
+
+    CacheOutcome(String tag) {
+        this.tag = tag;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+}
@@ -0,0 +1,141 @@
+package com.xmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存重建的执行器
+ * 1.有界队列，队列满了直接拒绝，由调用方继续返回旧数据（逻辑过期的数据本来就允许短暂不一致）
+ * 2.同一个key同时只会排队一个重建任务
+ * 3.任务抛出的异常会被记录下来，而不是丢在Future里无人处理
+ * 4.随Spring容器关闭而关闭
+ */
+@Slf4j
+@Component
+public class CacheRebuildExecutor implements DisposableBean {
+
+    private final ThreadPoolExecutor executor;
+
+    // 已提交但还没执行完的key，用来去重
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public CacheRebuildExecutor(@Value("${xmdp.cache.rebuild.core-size:10}") int coreSize,
+                                @Value("${xmdp.cache.rebuild.max-size:10}") int maxSize,
+                                @Value("${xmdp.cache.rebuild.queue-capacity:1000}") int queueCapacity) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(coreSize, Math.max(coreSize, maxSize),
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread thread = new Thread(r, "cache-rebuild-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                // 队列满了抛出异常，在submit中捕获，交给调用方降级
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 提交重建任务
+     * @param key 缓存key，同一个key同时只允许一个任务排队
+     * @param task 重建逻辑
+     * @return true：已提交；false：重复提交或者队列已满，调用方应继续返回旧数据并自行释放资源（例如锁）
+     */
+    public boolean submit(String key, Runnable task) {
+        // 1.去重
+        if (!pendingKeys.add(key)) {
+            deduplicated.increment();
+            return false;
+        }
+        // 2.提交
+        try {
+            executor.execute(() -> run(key, task));
+            submitted.increment();
+            return true;
+        } catch (RejectedExecutionException e) {
+            // 3.队列已满，拒绝
+            pendingKeys.remove(key);
+            rejected.increment();
+            log.warn("缓存重建队列已满，返回旧数据，key：{}", key);
+            return false;
+        }
+    }
+
+    private void run(String key, Runnable task) {
+        long begin = System.nanoTime();
+        try {
+            task.run();
+            succeeded.increment();
+        } catch (Throwable e) {
+            failed.increment();
+            log.error("缓存重建失败，key：{}", key, e);
+        } finally {
+            pendingKeys.remove(key);
+            long cost = System.nanoTime() - begin;
+            totalLatencyNanos.add(cost);
+            maxLatencyNanos.accumulateAndGet(cost, Math::max);
+        }
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * 重建任务的平均耗时，单位毫秒
+     */
+    public double getAvgLatencyMillis() {
+        long count = succeeded.sum() + failed.sum();
+        return count == 0 ? 0 : totalLatencyNanos.sum() / 1e6 / count;
+    }
+
+    /**
+     * 运行状态快照，供监控接口使用
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queueDepth", getQueueDepth());
+        stats.put("activeThreads", executor.getActiveCount());
+        stats.put("pendingKeys", pendingKeys.size());
+        stats.put("submitted", submitted.sum());
+        stats.put("deduplicated", deduplicated.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("succeeded", succeeded.sum());
+        stats.put("failed", failed.sum());
+        stats.put("avgLatencyMillis", getAvgLatencyMillis());
+        stats.put("maxLatencyMillis", maxLatencyNanos.get() / 1e6);
+        return stats;
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        // 不再接收新任务，等待已有任务执行完
+        executor.shutdown();
+        if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+            log.warn("缓存重建任务未能在5秒内完成，强制关闭，剩余任务数：{}", executor.getQueue().size());
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.xmdp.utils;
+
+/**
+ * 缓存查询策略，交给CacheClient按需选择
+ */
+public enum CacheStrategy {
+    /**
+     * 缓存空值，解决缓存穿透
+     */
+    PASS_THROUGH,
+    /**
+     * 互斥锁重建，解决缓存击穿（同时缓存空值）
+     */
+    MUTEX,
+    /**
+     * 逻辑过期异步重建，解决缓存击穿（建议提前预热，未命中时同步加载）
+     */
+    LOGICAL_EXPIRE
+}
@@ -0,0 +1,184 @@
+package com.xmdp.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * 热点key探测
+ * 滑动窗口 + count-min sketch统计每个key最近一段时间的访问次数，内存占用固定，与key的数量无关
+ * 窗口被切成若干个桶，每个桶一个sketch，时间走到新的桶时清空它，窗口内的次数 = 所有桶之和
+ * 访问次数达到阈值的key被认为是热点key，同时记录在候选集合中用于输出top-K
+ */
+public class HotKeyDetector {
+
+    // count-min sketch的行数（哈希函数个数）
+    private static final int DEPTH = 4;
+    private static final long[] SEEDS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0x27D4EB2F165667C5L
+    };
+
+    // 每行的宽度，2的幂
+    private final int width;
+    // 每个桶的时长
+    private final long bucketMillis;
+    // 桶的个数
+    private final int bucketCount;
+    // 窗口内访问次数达到多少算热点
+    private final long threshold;
+    // 输出的热点key个数
+    private final int topK;
+
+    // sketches[桶]，每个桶 DEPTH * width 个计数器
+    private final AtomicIntegerArray[] sketches;
+    // 每个桶当前属于第几个时间片，时间片变了说明桶里是旧数据，需要清空
+    private final AtomicLongArray bucketEpochs;
+
+    // 达到阈值的候选key -> 最近一次估算的访问次数
+    private final Map<Long, Long> candidates = new ConcurrentHashMap<>();
+
+    /**
+     * @param windowSeconds 统计窗口，秒
+     * @param bucketCount 窗口切分的桶数，越多滑动越平滑
+     * @param width sketch每行的宽度，越大误差越小
+     * @param threshold 窗口内访问次数达到多少算热点
+     * @param topK 输出的热点key个数
+     */
+    public HotKeyDetector(int windowSeconds, int bucketCount, int width, long threshold, int topK) {
+        this.width = Integer.highestOneBit(Math.max(64, width - 1) << 1);
+        this.bucketCount = Math.max(1, bucketCount);
+        this.bucketMillis = Math.max(1, windowSeconds * 1000L / this.bucketCount);
+        this.threshold = threshold;
+        this.topK = topK;
+        this.sketches = new AtomicIntegerArray[this.bucketCount];
+        for (int i = 0; i < this.bucketCount; i++) {
+            sketches[i] = new AtomicIntegerArray(DEPTH * this.width);
+        }
+        this.bucketEpochs = new AtomicLongArray(this.bucketCount);
+    }
+
+    /**
+     * 记录一次访问
+     * @return 记录之后是否是热点key
+     */
+    public boolean record(long key) {
+        long now = System.currentTimeMillis();
+        AtomicIntegerArray sketch = currentBucket(now);
+        for (int row = 0; row < DEPTH; row++) {
+            sketch.incrementAndGet(index(row, key));
+        }
+        long count = estimate(key, now);
+        if (count < threshold) {
+            return false;
+        }
+        candidates.put(key, count);
+        // 候选集合过大时清理已经不热的key
+        if (candidates.size() > topK * 4) {
+            prune(now);
+        }
+        return true;
+    }
+
+    /**
+     * 按请求路径记录访问，路径为 prefix + id，其他路径忽略
+     * 用于请求没有到达service的场景，例如响应缓存命中时直接由拦截器返回
+     */
+    public Consumer<String> pathRecorder(String prefix) {
+        return path -> {
+            if (!path.startsWith(prefix)) {
+                return;
+            }
+            try {
+                record(Long.parseLong(path.substring(prefix.length())));
+            } catch (NumberFormatException e) {
+                // 不是id，忽略
+            }
+        };
+    }
+
+    /**
+     * 是否是热点key，不记录访问
+     */
+    public boolean isHot(long key) {
+        return estimate(key, System.currentTimeMillis()) >= threshold;
+    }
+
+    /**
+     * 当前访问次数最多的key，key -> 窗口内的估算访问次数，按次数倒序
+     */
+    public Map<Long, Long> topK() {
+        long now = System.currentTimeMillis();
+        prune(now);
+        List<Map.Entry<Long, Long>> entries = new ArrayList<>(candidates.entrySet());
+        entries.sort(Map.Entry.<Long, Long>comparingByValue(Comparator.reverseOrder()));
+        Map<Long, Long> result = new LinkedHashMap<>();
+        for (Map.Entry<Long, Long> entry : entries) {
+            if (result.size() >= topK) {
+                break;
+            }
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    // 重新估算候选key的访问次数，移除已经低于阈值的
+    private void prune(long now) {
+        Iterator<Map.Entry<Long, Long>> it = candidates.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Long> entry = it.next();
+            long count = estimate(entry.getKey(), now);
+            if (count < threshold) {
+                it.remove();
+            } else {
+                entry.setValue(count);
+            }
+        }
+    }
+
+    // 窗口内的访问次数：所有未过期桶中，每个桶取各行的最小值，再求和
+    private long estimate(long key, long now) {
+        long epoch = now / bucketMillis;
+        long total = 0;
+        for (int b = 0; b < bucketCount; b++) {
+            // 超出窗口的桶不计入
+            if (epoch - bucketEpochs.get(b) >= bucketCount) {
+                continue;
+            }
+            AtomicIntegerArray sketch = sketches[b];
+            int min = Integer.MAX_VALUE;
+            for (int row = 0; row < DEPTH; row++) {
+                min = Math.min(min, sketch.get(index(row, key)));
+            }
+            total += min;
+        }
+        return total;
+    }
+
+    // 当前时间所在的桶，进入新的时间片时先清空
+    private AtomicIntegerArray currentBucket(long now) {
+        long epoch = now / bucketMillis;
+        int b = (int) (epoch % bucketCount);
+        long old = bucketEpochs.get(b);
+        if (old != epoch && bucketEpochs.compareAndSet(b, old, epoch)) {
+            // 只有一个线程负责清空，清空期间其他线程的少量计数可能丢失，对热点统计没有影响
+            AtomicIntegerArray sketch = sketches[b];
+            for (int i = 0; i < sketch.length(); i++) {
+                sketch.set(i, 0);
+            }
+        }
+        return sketches[b];
+    }
+
+    private int index(int row, long key) {
+        long h = (key ^ SEEDS[row]) * 0xbf58476d1ce4e5b9L;
+        h ^= h >>> 31;
+        return row * width + (int) (h & (width - 1));
+    }
+}
@@ -0,0 +1,30 @@
+package com.xmdp.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分布式锁
+ */
+public interface ILock {
+
+    /**
+     * 尝试获取锁，不等待；使用默认有效期，持有期间由看门狗自动续期
+     * @return true：获取成功；false：获取失败
+     */
+    boolean tryLock();
+
+    /**
+     * 尝试获取锁，最多等待waitTime；持有期间由看门狗自动续期
+     */
+    boolean tryLock(long waitTime, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * 尝试获取锁，最多等待waitTime；到达leaseTime后自动释放，不续期
+     */
+    boolean tryLock(long waitTime, long leaseTime, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * 释放锁，只会释放自己持有的锁
+     */
+    void unlock();
+}
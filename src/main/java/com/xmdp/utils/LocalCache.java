@@ -0,0 +1,60 @@
+package com.xmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 带失效序号的本地缓存，与ResponseCache相同的做法
+ * 查询redis、数据库的过程中收到了失效消息，查到的数据可能是失效之前的旧值，写入之后会一直留到过期
+ * 查询之前记下失效序号，写入时序号变了就不写入
+ */
+public class LocalCache<K, V> {
+
+    private final Cache<K, V> cache;
+    // 每次失效加一
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public LocalCache(Cache<K, V> cache) {
+        this.cache = cache;
+    }
+
+    public V getIfPresent(K key) {
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * 当前的失效序号，在查询数据之前获取
+     */
+    public long mark() {
+        return invalidations.get();
+    }
+
+    /**
+     * 写入缓存
+     * @param mark 查询数据之前获取的失效序号，之后有过失效则不写入
+     * @return 是否写入
+     */
+    public boolean put(K key, V value, long mark) {
+        cache.put(key, value);
+        // 写入之后再检查，防止检查和写入之间发生失效
+        if (invalidations.get() != mark) {
+            cache.invalidate(key);
+            return false;
+        }
+        return true;
+    }
+
+    public void putAll(Map<K, V> values, long mark) {
+        cache.putAll(values);
+        if (invalidations.get() != mark) {
+            cache.invalidateAll(values.keySet());
+        }
+    }
+
+    public void invalidate(K key) {
+        invalidations.incrementAndGet();
+        cache.invalidate(key);
+    }
+}
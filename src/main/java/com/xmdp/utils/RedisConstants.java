@@ -9,14 +9,34 @@ public class RedisConstants {
     public static final Long CACHE_NULL_TTL = 2L;
 
     public static final Long CACHE_SHOP_TTL = 30L;
+    public static final Long CACHE_SHOP_LOGICAL_TTL = 20L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
+    public static final String CACHE_SHOP_CHANNEL = "cache:shop:invalidate";
+    public static final String CACHE_SHOP_OF_TYPE_KEY = "cache:shop:of-type:";
+    public static final String CACHE_SHOP_TYPE_LIST_KEY = "cache:shop-type:list:";
+    public static final String CACHE_SHOP_TYPE_VERSION_KEY = "cache:shop-type:version";
+    public static final Long CACHE_SHOP_TYPE_TTL = 24L;
+    public static final String CACHE_VOUCHER_CHANNEL = "cache:voucher:invalidate";
+
+    public static final String BLOOM_SHOP_CHANNEL = "bloom:shop:add";
+    public static final String BLOOM_USER_CHANNEL = "bloom:user:add";
 
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
+    public static final String SECKILL_SYNC_LOCK_KEY = "lock:seckill:sync";
+
+    public static final String ID_KEY = "icr:";
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_ORDER_STREAM = "stream:seckill:order";
+    public static final String SECKILL_ORDER_DEAD_LETTER = "stream:seckill:order:dead-letter";
+    public static final String SECKILL_MISSING_KEY = "seckill:missing:";
+    public static final Long SECKILL_MISSING_TTL = 2L;
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
+    public static final String SHOP_GEO_CHANNEL = "shop:geo:update";
+    public static final String SHOP_NAME_CHANNEL = "shop:name:update";
     public static final String USER_SIGN_KEY = "sign:";
 }
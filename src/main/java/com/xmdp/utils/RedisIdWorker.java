@@ -0,0 +1,149 @@
+package com.xmdp.utils;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.xmdp.utils.RedisConstants.ID_KEY;
+
+/**
+ * 全局唯一id：符号位(1) + 时间戳(31，秒) + 序列号(32)
+ * 1.时间戳是当前时间与BEGIN_TIMESTAMP相差的秒数，可以用69年；id整体按时间递增，作为主键插入时总是追加在索引末尾
+ * 2.序列号是redis中按业务、按天的计数器 icr:{业务}:{yyyy:MM:dd}，每天从1开始，每天最多约42亿个
+ *   同一天内序列号不重复，时间戳又不会跨天，所以id不重复；订单id不再是连续的自增值，看不出每天的订单量
+ * 3.号段模式（segmentSize > 1）：每次INCRBY取一段序列号在本地分配，用完再取，不再每个id访问一次redis
+ *   代价是同一秒内不同节点的id不再严格按生成顺序递增，节点重启时没用完的号段被丢弃
+ * 4.在lua脚本中生成：ticket给出时间戳和序列号key，脚本确实需要id时才INCR，再用toId拼接
+ */
+public class RedisIdWorker {
+
+    // 开始时间戳，2022-01-01 00:00:00 UTC
+    private static final long BEGIN_TIMESTAMP = 1640995200L;
+    // 序列号的位数
+    private static final int COUNT_BITS = 32;
+    private static final long MAX_COUNT = (1L << COUNT_BITS) - 1;
+    private static final DateTimeFormatter DAY_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
+
+    private final Sequence sequence;
+    // 每次从redis取的序列号个数，小于等于1时每个id一次INCR
+    private final int segmentSize;
+    private final Clock clock;
+
+    // 业务 -> 当前号段
+    private final ConcurrentHashMap<String, Segment> segments = new ConcurrentHashMap<>();
+
+    public RedisIdWorker(StringRedisTemplate stringRedisTemplate, int segmentSize) {
+        this((key, delta) -> {
+            Long end = stringRedisTemplate.opsForValue().increment(key, delta);
+            if (end == null) {
+                throw new IllegalStateException("生成id失败，redis没有返回序列号：" + key);
+            }
+            return end;
+        }, segmentSize, Clock.systemDefaultZone());
+    }
+
+    RedisIdWorker(Sequence sequence, int segmentSize, Clock clock) {
+        this.sequence = sequence;
+        this.segmentSize = segmentSize;
+        this.clock = clock;
+    }
+
+    /**
+     * @param keyPrefix 业务名称，不同业务的序列号互相独立，例如order
+     */
+    public long nextId(String keyPrefix) {
+        // 1.时间戳和日期取自同一时刻，序列号所属的天与时间戳一致
+        Instant now = clock.instant();
+        long timestamp = now.getEpochSecond() - BEGIN_TIMESTAMP;
+        String day = now.atZone(clock.getZone()).format(DAY_FORMATTER);
+        // 2.序列号
+        long count = segmentSize > 1 ? nextInSegment(keyPrefix, day) : sequence.incrBy(key(keyPrefix, day), 1);
+        // 3.拼接
+        return toId(timestamp, count);
+    }
+
+    /**
+     * 序列号由lua脚本生成时使用：脚本校验通过后才对ticket的key执行INCR，被拒绝的请求不消耗序列号
+     * 与nextId共用同一个计数器，两种方式生成的id不会重复
+     */
+    public Ticket ticket(String keyPrefix) {
+        Instant now = clock.instant();
+        return new Ticket(key(keyPrefix, now.atZone(clock.getZone()).format(DAY_FORMATTER)),
+                now.getEpochSecond() - BEGIN_TIMESTAMP);
+    }
+
+    /**
+     * 时间戳和序列号拼接成id
+     */
+    public static long toId(long timestamp, long count) {
+        if (count > MAX_COUNT) {
+            throw new IllegalStateException("当天的序列号已经用完");
+        }
+        return timestamp << COUNT_BITS | count;
+    }
+
+    // 从本地号段分配，号段用完或者跨天时从redis取下一段
+    private long nextInSegment(String keyPrefix, String day) {
+        Segment segment = segments.computeIfAbsent(keyPrefix, k -> new Segment());
+        synchronized (segment) {
+            if (!day.equals(segment.day) || segment.next > segment.end) {
+                long end = sequence.incrBy(key(keyPrefix, day), segmentSize);
+                segment.day = day;
+                segment.next = end - segmentSize + 1;
+                segment.end = end;
+            }
+            return segment.next++;
+        }
+    }
+
+    private static String key(String keyPrefix, String day) {
+        return ID_KEY + keyPrefix + ":" + day;
+    }
+
+    /**
+     * 序列号来源，默认是redis的INCRBY，测试时可以替换成内存计数器
+     */
+    interface Sequence {
+        /**
+         * @return 增加delta之后的值，[返回值 - delta + 1, 返回值]这一段归调用方
+         */
+        long incrBy(String key, long delta);
+    }
+
+    /**
+     * 某一时刻的时间戳和当天的序列号key
+     */
+    public static class Ticket {
+        private final String key;
+        private final long timestamp;
+
+        Ticket(String key, long timestamp) {
+            this.key = key;
+            this.timestamp = timestamp;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public long toId(long count) {
+            return RedisIdWorker.toId(timestamp, count);
+        }
+    }
+
+    private static class Segment {
+        // 号段所属的天，跨天后作废
+        private String day;
+        // 下一个可用的序列号
+        private long next = 1;
+        // 号段的最后一个序列号
+        private long end = 0;
+    }
+}
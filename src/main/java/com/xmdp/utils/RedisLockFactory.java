@@ -0,0 +1,93 @@
+package com.xmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分布式锁工厂，同时负责看门狗续期
+ * 用法：
+ *   ILock lock = redisLockFactory.getLock("lock:order:" + userId);
+ *   if (lock.tryLock()) { try { ... } finally { lock.unlock(); } }
+ */
+@Slf4j
+@Component
+public class RedisLockFactory implements DisposableBean {
+
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT;
+
+    static {
+        RENEW_SCRIPT = new DefaultRedisScript<>();
+        RENEW_SCRIPT.setLocation(new ClassPathResource("renew.lua"));
+        RENEW_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    // 看门狗模式下锁的有效期，每过1/3有效期续期一次
+    private final long defaultLeaseMillis;
+
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "redis-lock-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // key + 持有者 -> 续期任务
+    private final Map<String, ScheduledFuture<?>> renewals = new ConcurrentHashMap<>();
+
+    public RedisLockFactory(StringRedisTemplate stringRedisTemplate,
+                            @Value("${xmdp.lock.lease-ms:30000}") long defaultLeaseMillis) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.defaultLeaseMillis = defaultLeaseMillis;
+    }
+
+    public ILock getLock(String key) {
+        return new SimpleRedisLock(key, stringRedisTemplate, this);
+    }
+
+    long getDefaultLeaseMillis() {
+        return defaultLeaseMillis;
+    }
+
+    // 重入时续期任务已经存在，不会重复创建
+    void scheduleRenewal(String key, String owner, long leaseMillis) {
+        long period = Math.max(1, leaseMillis / 3);
+        renewals.computeIfAbsent(key + "|" + owner, k -> watchdog.scheduleAtFixedRate(() -> {
+            try {
+                Long result = stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(key),
+                        owner, String.valueOf(leaseMillis));
+                if (result == null || result == 0L) {
+                    // 锁已经不存在或者不属于自己了，停止续期
+                    cancelRenewal(key, owner);
+                }
+            } catch (Exception e) {
+                log.error("锁续期失败，key：{}", key, e);
+            }
+        }, period, period, TimeUnit.MILLISECONDS));
+    }
+
+    void cancelRenewal(String key, String owner) {
+        ScheduledFuture<?> future = renewals.remove(key + "|" + owner);
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        watchdog.shutdownNow();
+    }
+}
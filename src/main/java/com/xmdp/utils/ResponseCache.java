@@ -0,0 +1,106 @@
+package com.xmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.xmdp.dto.CachedBody;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * 热点GET接口的响应缓存，保存序列化之后的json，命中时不经过controller和service，也不再序列化
+ * 1.只缓存注册过的路径，每个路径一个本地缓存，各自设置数量和过期时间，key为请求路径
+ * 2.数据变化时由对应的失效消息删除，过期时间只是兜底
+ * 3.请求开始时记下失效序号，写入时序号变了说明期间有数据失效，这次的结果可能是旧的，不写入
+ */
+public class ResponseCache {
+
+    // request attribute：没有命中、需要写入缓存的key
+    public static final String KEY_ATTRIBUTE = ResponseCache.class.getName() + ".key";
+    // request attribute：请求开始时的失效序号
+    public static final String MARK_ATTRIBUTE = ResponseCache.class.getName() + ".mark";
+
+    private final List<Route> routes = new CopyOnWriteArrayList<>();
+    // 每次失效加一
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * 注册一个可以缓存的路径
+     * @param regex 完整匹配请求路径的正则，例如 /shop/\d+
+     * @param maximumSize 最多缓存的响应数
+     * @param expireSeconds 写入后多久过期
+     */
+    public ResponseCache route(String regex, long maximumSize, long expireSeconds) {
+        Cache<String, CachedBody> cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                .build();
+        routes.add(new Route(Pattern.compile(regex), cache));
+        return this;
+    }
+
+    /**
+     * 请求路径是否可以缓存
+     */
+    public boolean cacheable(String path) {
+        return find(path) != null;
+    }
+
+    public CachedBody get(String path) {
+        Cache<String, CachedBody> cache = find(path);
+        return cache == null ? null : cache.getIfPresent(path);
+    }
+
+    /**
+     * 当前的失效序号，在查询数据之前获取
+     */
+    public long mark() {
+        return invalidations.get();
+    }
+
+    /**
+     * 写入缓存
+     * @param mark 查询数据之前获取的失效序号，之后有过失效则不写入
+     */
+    public void put(String path, CachedBody body, long mark) {
+        Cache<String, CachedBody> cache = find(path);
+        if (cache == null) {
+            return;
+        }
+        cache.put(path, body);
+        // 写入之后再检查，防止检查和写入之间发生失效
+        if (invalidations.get() != mark) {
+            cache.invalidate(path);
+        }
+    }
+
+    public void invalidate(String path) {
+        invalidations.incrementAndGet();
+        Cache<String, CachedBody> cache = find(path);
+        if (cache != null) {
+            cache.invalidate(path);
+        }
+    }
+
+    private Cache<String, CachedBody> find(String path) {
+        for (Route route : routes) {
+            if (route.pattern.matcher(path).matches()) {
+                return route.cache;
+            }
+        }
+        return null;
+    }
+
+    private static class Route {
+        private final Pattern pattern;
+        private final Cache<String, CachedBody> cache;
+
+        Route(Pattern pattern, Cache<String, CachedBody> cache) {
+            this.pattern = pattern;
+            this.cache = cache;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.xmdp.utils;
+
+import com.xmdp.dto.CachedBody;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.function.Consumer;
+
+/**
+ * 响应缓存的拦截器，命中时直接写出缓存的json，If-None-Match或If-Modified-Since匹配时返回304
+ * 没有命中时放行，由ResponseCacheAdvice在序列化之前写入缓存
+ * 命中的请求不会到达service，需要统计访问次数时通过hitListener通知，参数为请求路径
+ */
+public class ResponseCacheInterceptor implements HandlerInterceptor {
+
+    // 手动创建的对象，通过构造器传入
+    private final ResponseCache responseCache;
+    private final Consumer<String> hitListener;
+
+    public ResponseCacheInterceptor(ResponseCache responseCache) {
+        this(responseCache, path -> {
+        });
+    }
+
+    public ResponseCacheInterceptor(ResponseCache responseCache, Consumer<String> hitListener) {
+        this.responseCache = responseCache;
+        this.hitListener = hitListener;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // 1.只处理注册过的GET请求
+        String path = request.getRequestURI();
+        if (!"GET".equals(request.getMethod()) || !responseCache.cacheable(path)) {
+            return true;
+        }
+        // 2.没有命中，记下key和失效序号，放行
+        CachedBody cached = responseCache.get(path);
+        if (cached == null) {
+            request.setAttribute(ResponseCache.MARK_ATTRIBUTE, responseCache.mark());
+            request.setAttribute(ResponseCache.KEY_ATTRIBUTE, path);
+            return true;
+        }
+        hitListener.accept(path);
+        // 3.命中，客户端的版本和缓存一致，返回304，同时会写入ETag和Last-Modified响应头
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        if (new ServletWebRequest(request, response).checkNotModified(cached.getEtag(), cached.getLastModified())) {
+            return false;
+        }
+        // 4.直接写出缓存的json
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(cached.getBody().length);
+        response.getOutputStream().write(cached.getBody());
+        return false;
+    }
+}
@@ -0,0 +1,466 @@
+package com.xmdp.utils;
+
+import com.xmdp.entity.VoucherOrder;
+import com.xmdp.service.IVoucherOrderService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.PendingMessagesSummary;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamInfo;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.xmdp.utils.RedisConstants.SECKILL_ORDER_DEAD_LETTER;
+import static com.xmdp.utils.RedisConstants.SECKILL_ORDER_STREAM;
+
+/**
+ * 秒杀订单的消费者：从redis stream读取seckill.lua写入的订单，写入tb_voucher_order
+ * 1.所有节点在同一个消费者组中，每条消息只投递给一个节点；消费者名称取节点编号worker-id，重启后名称不变
+ * 2.数据库事务提交之后才确认（XACK）并删除（XDEL），宕机时未确认的消息留在pending列表中，重启后先处理自己名下的pending消息
+ *   stream不按长度裁剪，没有写入数据库的订单不会被删掉；确认之后、删除之前宕机留下的消息由定时任务清理
+ *   订单攒够batch-size条或者等待flush-ms之后作为一批，一个事务多行insert写入，每个秒杀券只扣减一次库存
+ * 3.定时检查pending列表，投递后长时间未确认的消息（其他节点宕机、写入失败）通过XCLAIM转给当前节点重试
+ * 4.投递次数超过上限的消息转入死信队列，保留原始内容和失败原因，等待人工处理
+ * 消息可能被重复投递，(user_id, voucher_id)唯一索引保证重复写入时只有一条订单，重复的消息直接确认
+ * 线程在所有bean创建完成后由start启动，关闭时stop等待正在写入的一批完成
+ */
+@Slf4j
+@Component
+public class SeckillOrderConsumer implements SmartLifecycle {
+
+    private static final String GROUP = "order-writer";
+
+    private final IVoucherOrderService voucherOrderService;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    // 消费者名称
+    private final String consumerName;
+    // 每批写入数据库的最大订单数
+    private final int batchSize;
+    // 读到第一条消息之后最多再等多久凑满一批
+    private final long flushMillis;
+    // 没有消息时阻塞等待的时间
+    private final long blockMillis;
+    // 投递后多久没有确认就转给当前节点
+    private final long claimIdleMillis;
+    // 最多投递次数
+    private final int maxDeliveries;
+    // 检查pending列表的间隔
+    private final long reclaimIntervalMillis;
+
+    // 读取新消息
+    private ExecutorService reader;
+    // 检查pending列表、更新监控指标
+    private ScheduledExecutorService reclaimer;
+    private volatile boolean running;
+
+    // 最早一条没有确认的消息已经等待的时间，毫秒
+    private volatile long lagMillis;
+    // 已投递未确认的消息数
+    private volatile long pendingCount;
+    private final Counter deadLetterCounter;
+
+    public SeckillOrderConsumer(IVoucherOrderService voucherOrderService, StringRedisTemplate stringRedisTemplate,
+                                MeterRegistry meterRegistry,
+                                @Value("${xmdp.seckill.worker-id:1}") long workerId,
+                                @Value("${xmdp.seckill.stream.batch-size:100}") int batchSize,
+                                @Value("${xmdp.seckill.stream.flush-ms:20}") long flushMillis,
+                                @Value("${xmdp.seckill.stream.block-ms:2000}") long blockMillis,
+                                @Value("${xmdp.seckill.stream.claim-idle-ms:30000}") long claimIdleMillis,
+                                @Value("${xmdp.seckill.stream.max-deliveries:5}") int maxDeliveries,
+                                @Value("${xmdp.seckill.stream.reclaim-interval-ms:5000}") long reclaimIntervalMillis) {
+        this.voucherOrderService = voucherOrderService;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.consumerName = "consumer-" + workerId;
+        this.batchSize = batchSize;
+        this.flushMillis = flushMillis;
+        this.blockMillis = blockMillis;
+        this.claimIdleMillis = claimIdleMillis;
+        this.maxDeliveries = maxDeliveries;
+        this.reclaimIntervalMillis = reclaimIntervalMillis;
+
+        Gauge.builder("xmdp.seckill.order.lag", this, consumer -> consumer.lagMillis / 1000.0)
+                .description("最早一条没有写入数据库的秒杀订单已经等待的时间")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("xmdp.seckill.order.pending", this, consumer -> consumer.pendingCount)
+                .description("已投递、还没有确认的秒杀订单消息数")
+                .register(meterRegistry);
+        this.deadLetterCounter = Counter.builder("xmdp.seckill.order.dead-letter")
+                .description("转入死信队列的秒杀订单数")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        reader = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "seckill-order-consumer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reclaimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "seckill-order-reclaimer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reader.submit(this::consume);
+        reclaimer.scheduleWithFixedDelay(this::reclaimSafely, reclaimIntervalMillis, reclaimIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // 读取消息的循环：先处理自己名下的pending消息，再阻塞读取新消息
+    private void consume() {
+        boolean groupReady = false;
+        // 自己名下的pending消息读到哪里了，为null表示已经处理完，开始读取新消息
+        String pendingOffset = "0";
+        while (running) {
+            try {
+                if (!groupReady) {
+                    createGroup();
+                    groupReady = true;
+                }
+                Consumer consumer = Consumer.from(GROUP, consumerName);
+                List<MapRecord<String, Object, Object>> records;
+                if (pendingOffset != null) {
+                    // 1.读取已经投递给自己、还没有确认的消息，不阻塞
+                    records = stringRedisTemplate.opsForStream().read(consumer,
+                            StreamReadOptions.empty().count(batchSize),
+                            StreamOffset.create(SECKILL_ORDER_STREAM, ReadOffset.from(pendingOffset)));
+                    if (records == null || records.isEmpty()) {
+                        pendingOffset = null;
+                        continue;
+                    }
+                    pendingOffset = records.get(records.size() - 1).getId().getValue();
+                } else {
+                    // 2.读取新消息，没有消息时阻塞等待
+                    records = readNew(consumer, blockMillis, batchSize);
+                    if (records.isEmpty()) {
+                        continue;
+                    }
+                    // 3.读到消息之后，在flushMillis内继续读取，凑满一批再写入
+                    long deadline = System.currentTimeMillis() + flushMillis;
+                    while (records.size() < batchSize) {
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0) {
+                            break;
+                        }
+                        List<MapRecord<String, Object, Object>> more = readNew(consumer, remaining, batchSize - records.size());
+                        if (more.isEmpty()) {
+                            break;
+                        }
+                        records.addAll(more);
+                    }
+                }
+                Map<RecordId, Map<String, String>> batch = new LinkedHashMap<>();
+                for (MapRecord<String, Object, Object> record : records) {
+                    Map<String, String> fields = new HashMap<>();
+                    record.getValue().forEach((k, v) -> fields.put(String.valueOf(k), String.valueOf(v)));
+                    batch.put(record.getId(), fields);
+                }
+                handleBatch(batch);
+            } catch (Exception e) {
+                // redis不可用等情况，稍后重试
+                log.error("读取秒杀订单消息失败", e);
+                sleep(1000);
+            }
+        }
+    }
+
+    // 读取还没有投递过的消息，最多阻塞blockMillis
+    private List<MapRecord<String, Object, Object>> readNew(Consumer consumer, long blockMillis, int count) {
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(consumer,
+                StreamReadOptions.empty().count(count).block(Duration.ofMillis(blockMillis)),
+                StreamOffset.create(SECKILL_ORDER_STREAM, ReadOffset.lastConsumed()));
+        return records == null ? new ArrayList<>() : new ArrayList<>(records);
+    }
+
+    // 创建消费者组，stream不存在时一起创建，已经存在时忽略
+    private void createGroup() {
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands().xGroupCreate(
+                    bytes(SECKILL_ORDER_STREAM), GROUP, ReadOffset.from("0"), true));
+        } catch (Exception e) {
+            if (!String.valueOf(e.getMessage()).contains("BUSYGROUP")
+                    && !(e.getCause() != null && String.valueOf(e.getCause().getMessage()).contains("BUSYGROUP"))) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 处理一批消息：一个事务写入整批订单，提交后一次确认
+     * 整批写入失败（重复投递的订单、数据库库存不足）时事务回滚，改为逐条处理，只有出问题的消息走重试或死信
+     */
+    private void handleBatch(Map<RecordId, Map<String, String>> batch) {
+        // 1.格式错误的消息直接转入死信队列
+        List<RecordId> ids = new ArrayList<>(batch.size());
+        List<VoucherOrder> voucherOrders = new ArrayList<>(batch.size());
+        for (Map.Entry<RecordId, Map<String, String>> entry : batch.entrySet()) {
+            VoucherOrder voucherOrder = toVoucherOrder(entry.getValue());
+            if (voucherOrder == null) {
+                deadLetter(entry.getKey(), entry.getValue(), "消息内容为空或格式错误");
+                continue;
+            }
+            ids.add(entry.getKey());
+            voucherOrders.add(voucherOrder);
+        }
+        // 2.整批写入，成功后一次确认
+        if (voucherOrders.size() > 1) {
+            try {
+                if (voucherOrderService.createVoucherOrders(voucherOrders)) {
+                    acknowledge(ids.toArray(new RecordId[0]));
+                    return;
+                }
+                log.warn("秒杀订单批量写入时数据库库存不足，改为逐条写入，消息：{}~{}", ids.get(0), ids.get(ids.size() - 1));
+            } catch (DuplicateKeyException e) {
+                log.debug("批量写入的秒杀订单中有已经存在的订单，改为逐条写入，消息：{}~{}", ids.get(0), ids.get(ids.size() - 1));
+            } catch (Exception e) {
+                log.warn("秒杀订单批量写入失败，稍后重试，消息：{}~{}", ids.get(0), ids.get(ids.size() - 1), e);
+                return;
+            }
+        }
+        // 3.只有一条，或者整批写入失败
+        for (RecordId id : ids) {
+            handle(id, batch.get(id));
+        }
+    }
+
+    /**
+     * 处理一条消息：写入数据库，提交后确认
+     * 写入失败时不确认，留在pending列表中，由reclaim重试
+     */
+    private void handle(RecordId id, Map<String, String> fields) {
+        // 1.消息内容为空（pending列表中的消息已经被删除），或者格式错误
+        VoucherOrder voucherOrder = toVoucherOrder(fields);
+        if (voucherOrder == null) {
+            deadLetter(id, fields, "消息内容为空或格式错误");
+            return;
+        }
+        try {
+            // 2.写入数据库，事务在方法返回时已经提交
+            if (!voucherOrderService.createVoucherOrder(voucherOrder)) {
+                // 数据库库存不足，说明redis与数据库的库存不一致，重试也不会成功
+                deadLetter(id, fields, "数据库库存不足");
+                return;
+            }
+        } catch (DuplicateKeyException e) {
+            // 确认之前宕机，消息被重新投递，订单已经写入过
+            log.debug("秒杀订单已经存在，订单：{}", voucherOrder);
+        } catch (Exception e) {
+            log.warn("秒杀订单写入失败，稍后重试，消息：{}，订单：{}", id, voucherOrder, e);
+            return;
+        }
+        // 3.确认
+        acknowledge(id);
+    }
+
+    // 确认之后删除，订单已经在数据库中，消息不再需要；先删除再确认的话，宕机后pending列表中会留下内容为空的消息
+    private void acknowledge(RecordId... ids) {
+        stringRedisTemplate.opsForStream().acknowledge(SECKILL_ORDER_STREAM, GROUP, ids);
+        stringRedisTemplate.opsForStream().delete(SECKILL_ORDER_STREAM, ids);
+    }
+
+    private void reclaimSafely() {
+        try {
+            reclaim();
+            updateLagAndTrim();
+        } catch (Exception e) {
+            log.error("检查秒杀订单pending列表失败", e);
+        }
+    }
+
+    // 长时间没有确认的消息转给当前节点重新处理，投递次数超过上限的转入死信队列
+    private void reclaim() {
+        PendingMessages pending = stringRedisTemplate.opsForStream()
+                .pending(SECKILL_ORDER_STREAM, GROUP, Range.unbounded(), batchSize);
+        List<RecordId> claimIds = new ArrayList<>();
+        for (PendingMessage message : pending) {
+            if (message.getElapsedTimeSinceLastDelivery().toMillis() < claimIdleMillis) {
+                continue;
+            }
+            if (message.getTotalDeliveryCount() >= maxDeliveries) {
+                // 读取原始内容写入死信队列
+                List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                        .range(SECKILL_ORDER_STREAM, Range.closed(message.getIdAsString(), message.getIdAsString()));
+                Map<String, String> fields = new LinkedHashMap<>();
+                if (records != null && !records.isEmpty()) {
+                    records.get(0).getValue().forEach((k, v) -> fields.put(String.valueOf(k), String.valueOf(v)));
+                }
+                deadLetter(message.getId(), fields, "投递" + message.getTotalDeliveryCount() + "次仍未写入");
+                continue;
+            }
+            claimIds.add(message.getId());
+        }
+        if (claimIds.isEmpty()) {
+            return;
+        }
+        // XCLAIM时再次检查空闲时间，其他节点刚刚处理过的消息不会被抢走
+        List<ByteRecord> claimed = stringRedisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                connection.streamCommands().xClaim(bytes(SECKILL_ORDER_STREAM), GROUP, consumerName,
+                        RedisStreamCommands.XClaimOptions.minIdleMs(claimIdleMillis).ids(claimIds)));
+        if (claimed == null) {
+            return;
+        }
+        Map<RecordId, Map<String, String>> batch = new LinkedHashMap<>();
+        for (ByteRecord record : claimed) {
+            Map<String, String> fields = new HashMap<>();
+            record.getValue().forEach((k, v) -> fields.put(string(k), string(v)));
+            batch.put(record.getId(), fields);
+        }
+        handleBatch(batch);
+    }
+
+    // 写入死信队列并确认原消息
+    private void deadLetter(RecordId id, Map<String, String> fields, String reason) {
+        Map<String, String> letter = new LinkedHashMap<>(fields);
+        letter.put("sourceId", id.getValue());
+        letter.put("reason", reason);
+        stringRedisTemplate.opsForStream().add(SECKILL_ORDER_DEAD_LETTER, letter);
+        acknowledge(id);
+        deadLetterCounter.increment();
+        log.error("秒杀订单转入死信队列，消息：{}，内容：{}，原因：{}", id, fields, reason);
+    }
+
+    /**
+     * 消费延迟：最早一条未确认的消息（pending列表中最小的id）和第一条还没有投递的消息，取较早的一个
+     * stream的消息id就是写入时的毫秒时间戳
+     * 比它更早的消息都已经确认，还留在stream中的是确认之后、删除之前宕机漏掉的，一起删除
+     */
+    private void updateLagAndTrim() {
+        RecordId oldest = null;
+        PendingMessagesSummary summary = stringRedisTemplate.opsForStream().pending(SECKILL_ORDER_STREAM, GROUP);
+        pendingCount = summary == null ? 0 : summary.getTotalPendingMessages();
+        if (pendingCount > 0) {
+            oldest = summary.minRecordId();
+        }
+        // 消费者组最后投递的消息之后的第一条
+        String lastDelivered = null;
+        StreamInfo.XInfoGroups groups = stringRedisTemplate.opsForStream().groups(SECKILL_ORDER_STREAM);
+        for (int i = 0; i < groups.size(); i++) {
+            StreamInfo.XInfoGroup group = groups.get(i);
+            if (GROUP.equals(group.groupName())) {
+                lastDelivered = group.lastDeliveredId();
+            }
+        }
+        if (lastDelivered != null) {
+            List<MapRecord<String, Object, Object>> next = stringRedisTemplate.opsForStream().range(SECKILL_ORDER_STREAM,
+                    Range.rightUnbounded(Range.Bound.inclusive(lastDelivered)), RedisZSetCommands.Limit.limit().count(2));
+            for (MapRecord<String, Object, Object> record : next) {
+                if (!record.getId().getValue().equals(lastDelivered)) {
+                    if (oldest == null || before(record.getId(), oldest)) {
+                        oldest = record.getId();
+                    }
+                    break;
+                }
+            }
+        }
+        lagMillis = oldest == null ? 0 : Math.max(0, System.currentTimeMillis() - oldest.getTimestamp());
+        if (lastDelivered == null) {
+            return;
+        }
+        // 删除oldest之前的消息，没有未确认、未投递的消息时，最后投递的消息及之前的都可以删除
+        RecordId bound = oldest == null ? RecordId.of(lastDelivered) : oldest;
+        List<MapRecord<String, Object, Object>> acked = stringRedisTemplate.opsForStream().range(SECKILL_ORDER_STREAM,
+                Range.leftUnbounded(Range.Bound.inclusive(bound.getValue())), RedisZSetCommands.Limit.limit().count(batchSize));
+        List<RecordId> ids = new ArrayList<>();
+        for (MapRecord<String, Object, Object> record : acked) {
+            if (oldest == null || before(record.getId(), oldest)) {
+                ids.add(record.getId());
+            }
+        }
+        if (!ids.isEmpty()) {
+            stringRedisTemplate.opsForStream().delete(SECKILL_ORDER_STREAM, ids.toArray(new RecordId[0]));
+        }
+    }
+
+    private static boolean before(RecordId a, RecordId b) {
+        return a.getTimestamp() < b.getTimestamp()
+                || (a.getTimestamp().equals(b.getTimestamp()) && a.getSequence() < b.getSequence());
+    }
+
+    // 订单id由消息中的时间戳和序列号拼接，见seckill.lua；升级前写入的消息直接带有订单id
+    private static VoucherOrder toVoucherOrder(Map<String, String> fields) {
+        try {
+            String id = fields.get("id");
+            return new VoucherOrder()
+                    .setId(id != null ? Long.parseLong(id)
+                            : RedisIdWorker.toId(Long.parseLong(fields.get("ts")), Long.parseLong(fields.get("seq"))))
+                    .setUserId(Long.valueOf(fields.get("userId")))
+                    .setVoucherId(Long.valueOf(fields.get("voucherId")));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        reclaimer.shutdownNow();
+        reader.shutdown();
+        // 等待正在处理的一批写完，没有确认的消息重启后会重新处理
+        try {
+            if (!reader.awaitTermination(blockMillis + 5000, TimeUnit.MILLISECONDS)) {
+                reader.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            reader.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
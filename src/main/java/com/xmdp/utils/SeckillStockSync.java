@@ -0,0 +1,226 @@
+package com.xmdp.utils;
+
+import com.xmdp.entity.SeckillVoucher;
+import com.xmdp.service.ISeckillVoucherService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.xmdp.utils.RedisConstants.SECKILL_MISSING_KEY;
+import static com.xmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.xmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.xmdp.utils.RedisConstants.SECKILL_SYNC_LOCK_KEY;
+
+/**
+ * 秒杀券在redis中的生命周期
+ * 1.新增秒杀券的事务提交后立即写入库存、开始和结束时间，第一个下单请求不需要再查询数据库
+ * 2.定时任务（所有节点中只有拿到锁的一个执行）：
+ *   预热：即将开始和进行中的秒杀券，redis中不存在时写入（redis数据丢失、直接改库新增的秒杀券）
+ *   对账：redis中的库存与数据库不一致时以数据库为准修正，开始、结束时间同步数据库中的修改
+ *   清理：已经结束的秒杀券删除库存和下单记录
+ *   定时任务在所有bean创建完成后由start启动，stop时停止
+ */
+@Slf4j
+@Component
+public class SeckillStockSync implements SmartLifecycle {
+
+    private static final DefaultRedisScript<Long> SECKILL_LOAD_SCRIPT;
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> SECKILL_SYNC_SCRIPT;
+
+    static {
+        SECKILL_LOAD_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_LOAD_SCRIPT.setLocation(new ClassPathResource("seckill_load.lua"));
+        SECKILL_LOAD_SCRIPT.setResultType(Long.class);
+        SECKILL_SYNC_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_SYNC_SCRIPT.setLocation(new ClassPathResource("seckill_sync.lua"));
+        SECKILL_SYNC_SCRIPT.setResultType(List.class);
+    }
+
+    // seckill_sync.lua的返回值
+    private static final long SYNC_LOADED = 1;
+    private static final long SYNC_REPAIRED = 2;
+
+    // 秒杀结束后redis中的秒杀券和下单记录最多保留多久，定时任务没有清理时由过期时间兜底
+    private static final long SECKILL_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final ISeckillVoucherService seckillVoucherService;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisLockFactory redisLockFactory;
+
+    // 开始前多久预热
+    private final long preloadAheadMinutes;
+    // 结束后多久清理
+    private final long cleanupDelayMinutes;
+    // 定时任务的间隔，小于等于0时不启动
+    private final long intervalMillis;
+
+    private ScheduledExecutorService scheduler;
+
+    private final Counter loadedCounter;
+    private final Counter repairedCounter;
+
+    public SeckillStockSync(ISeckillVoucherService seckillVoucherService, StringRedisTemplate stringRedisTemplate,
+                            RedisLockFactory redisLockFactory, MeterRegistry meterRegistry,
+                            @Value("${xmdp.seckill.sync.interval-ms:60000}") long intervalMillis,
+                            @Value("${xmdp.seckill.sync.preload-ahead-minutes:60}") long preloadAheadMinutes,
+                            @Value("${xmdp.seckill.sync.cleanup-delay-minutes:10}") long cleanupDelayMinutes) {
+        this.seckillVoucherService = seckillVoucherService;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redisLockFactory = redisLockFactory;
+        this.preloadAheadMinutes = preloadAheadMinutes;
+        this.cleanupDelayMinutes = cleanupDelayMinutes;
+        this.intervalMillis = intervalMillis;
+        this.loadedCounter = Counter.builder("xmdp.seckill.sync.loaded")
+                .description("定时任务写入redis的秒杀券数")
+                .register(meterRegistry);
+        this.repairedCounter = Counter.builder("xmdp.seckill.sync.repaired")
+                .description("redis库存与数据库不一致、被修正的次数")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (intervalMillis <= 0 || scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "seckill-stock-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::syncSafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 把秒杀券写入redis，已经存在时不覆盖，防止把已经扣减过的库存改回去
+     * 同时删除"不是秒杀券"的标记，见VoucherOrderServiceImpl.loadSeckillVoucher
+     */
+    public void preload(SeckillVoucher seckillVoucher) {
+        stringRedisTemplate.delete(SECKILL_MISSING_KEY + seckillVoucher.getVoucherId());
+        long endMillis = toMillis(seckillVoucher.getEndTime());
+        stringRedisTemplate.execute(SECKILL_LOAD_SCRIPT,
+                Collections.singletonList(SECKILL_STOCK_KEY + seckillVoucher.getVoucherId()),
+                seckillVoucher.getStock().toString(),
+                String.valueOf(toMillis(seckillVoucher.getBeginTime())),
+                String.valueOf(endMillis),
+                String.valueOf(expireAt(endMillis)));
+    }
+
+    private void syncSafely() {
+        // 多个节点同时执行结果也正确，加锁只是避免重复查询
+        ILock lock = redisLockFactory.getLock(SECKILL_SYNC_LOCK_KEY);
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            reconcile();
+            cleanUp();
+        } catch (Exception e) {
+            log.error("同步秒杀券库存失败", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 预热和对账：即将开始和进行中的秒杀券
+     * @return 检查的秒杀券数量
+     */
+    public int reconcile() {
+        LocalDateTime now = LocalDateTime.now();
+        List<SeckillVoucher> vouchers = seckillVoucherService.query()
+                .lt("begin_time", now.plusMinutes(preloadAheadMinutes))
+                .gt("end_time", now)
+                .list();
+        for (SeckillVoucher voucher : vouchers) {
+            reconcile(voucher);
+        }
+        return vouchers.size();
+    }
+
+    private void reconcile(SeckillVoucher voucher) {
+        Long voucherId = voucher.getVoucherId();
+        // 1.数据库中的剩余库存和已写入的订单数
+        Map<String, Object> row = seckillVoucherService.queryStockAndSold(voucherId);
+        if (row == null) {
+            return;
+        }
+        long stock = ((Number) row.get("stock")).longValue();
+        long total = stock + ((Number) row.get("sold")).longValue();
+        // 2.在redis中比较并修正
+        long endMillis = toMillis(voucher.getEndTime());
+        List<?> result = stringRedisTemplate.execute(SECKILL_SYNC_SCRIPT,
+                Arrays.asList(SECKILL_STOCK_KEY + voucherId, SECKILL_ORDER_KEY + voucherId),
+                String.valueOf(total), String.valueOf(stock),
+                String.valueOf(toMillis(voucher.getBeginTime())), String.valueOf(endMillis),
+                String.valueOf(expireAt(endMillis)));
+        if (result == null || result.size() < 3) {
+            return;
+        }
+        long code = ((Number) result.get(0)).longValue();
+        if (code == SYNC_LOADED) {
+            loadedCounter.increment();
+            log.info("秒杀券预热，id：{}，库存：{}", voucherId, result.get(2));
+        } else if (code == SYNC_REPAIRED) {
+            repairedCounter.increment();
+            log.warn("秒杀券库存与数据库不一致，已修正，id：{}，redis库存：{} -> {}", voucherId, result.get(1), result.get(2));
+        }
+    }
+
+    /**
+     * 清理：结束超过cleanupDelayMinutes的秒杀券，更早结束的已经由过期时间删除
+     */
+    public void cleanUp() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime until = now.minusMinutes(cleanupDelayMinutes);
+        List<SeckillVoucher> vouchers = seckillVoucherService.query()
+                .select("voucher_id")
+                .gt("end_time", until.minus(SECKILL_RETENTION_MILLIS, ChronoUnit.MILLIS))
+                .le("end_time", until)
+                .list();
+        for (SeckillVoucher voucher : vouchers) {
+            stringRedisTemplate.delete(Arrays.asList(SECKILL_STOCK_KEY + voucher.getVoucherId(),
+                    SECKILL_ORDER_KEY + voucher.getVoucherId()));
+        }
+    }
+
+    // 结束后保留一段时间，已经结束的秒杀券也要写入，之后的请求由脚本返回已结束，不会每次都查询数据库
+    private static long expireAt(long endMillis) {
+        return Math.max(endMillis, System.currentTimeMillis()) + SECKILL_RETENTION_MILLIS;
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return scheduler != null;
+    }
+}
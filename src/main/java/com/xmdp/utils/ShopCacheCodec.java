@@ -0,0 +1,158 @@
+package com.xmdp.utils;
+
+import com.xmdp.entity.Shop;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * 店铺缓存的二进制编解码器
+ * JSON方案每次读取要解析两遍（先转RedisData，再把data转成Shop），还要走hutool的反射，
+ * 这里按固定的字段顺序直接读写字节，解码时直接new Shop
+ *
+ * 格式：
+ * | magic(1) | version(1) | expireMillis(8) | 字段非空位图(2) | 非空字段依次写入 |
+ * 字符串：长度(4) + UTF-8字节；数字按原类型定长写入；时间：epoch毫秒(8)
+ */
+public class ShopCacheCodec implements CacheCodec<Shop> {
+
+    public static final ShopCacheCodec INSTANCE = new ShopCacheCodec();
+
+    // 魔数，JSON一定以'{'开头，以此区分新旧两种格式
+    private static final byte MAGIC = (byte) 0xB5;
+    private static final byte VERSION = 1;
+    // magic + version + expireMillis + 位图
+    private static final int HEADER_SIZE = 1 + 1 + 8 + 2;
+
+    // 旧数据是JSON格式，兼容读取
+    private final JsonCacheCodec<Shop> jsonCodec = new JsonCacheCodec<>(Shop.class);
+
+    private ShopCacheCodec() {
+    }
+
+    @Override
+    public Class<Shop> type() {
+        return Shop.class;
+    }
+
+    @Override
+    public byte[] encode(Shop shop, long expireMillis) {
+        if (shop == null) {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+            buffer.put(MAGIC).put(VERSION).putLong(expireMillis).putShort((short) 0);
+            return buffer.array();
+        }
+        // 1.先把字符串转成字节，计算出总长度，只分配一次内存
+        byte[] name = bytes(shop.getName());
+        byte[] images = bytes(shop.getImages());
+        byte[] area = bytes(shop.getArea());
+        byte[] address = bytes(shop.getAddress());
+        byte[] openHours = bytes(shop.getOpenHours());
+        int mask = 0;
+        int size = HEADER_SIZE;
+        if (shop.getId() != null) { mask |= 1; size += 8; }
+        if (name != null) { mask |= 1 << 1; size += 4 + name.length; }
+        if (shop.getTypeId() != null) { mask |= 1 << 2; size += 8; }
+        if (images != null) { mask |= 1 << 3; size += 4 + images.length; }
+        if (area != null) { mask |= 1 << 4; size += 4 + area.length; }
+        if (address != null) { mask |= 1 << 5; size += 4 + address.length; }
+        if (shop.getX() != null) { mask |= 1 << 6; size += 8; }
+        if (shop.getY() != null) { mask |= 1 << 7; size += 8; }
+        if (shop.getAvgPrice() != null) { mask |= 1 << 8; size += 8; }
+        if (shop.getSold() != null) { mask |= 1 << 9; size += 4; }
+        if (shop.getComments() != null) { mask |= 1 << 10; size += 4; }
+        if (shop.getScore() != null) { mask |= 1 << 11; size += 4; }
+        if (openHours != null) { mask |= 1 << 12; size += 4 + openHours.length; }
+        if (shop.getCreateTime() != null) { mask |= 1 << 13; size += 8; }
+        if (shop.getUpdateTime() != null) { mask |= 1 << 14; size += 8; }
+        // 2.按顺序写入
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(MAGIC).put(VERSION).putLong(expireMillis).putShort((short) mask);
+        if (shop.getId() != null) buffer.putLong(shop.getId());
+        if (name != null) putBytes(buffer, name);
+        if (shop.getTypeId() != null) buffer.putLong(shop.getTypeId());
+        if (images != null) putBytes(buffer, images);
+        if (area != null) putBytes(buffer, area);
+        if (address != null) putBytes(buffer, address);
+        if (shop.getX() != null) buffer.putDouble(shop.getX());
+        if (shop.getY() != null) buffer.putDouble(shop.getY());
+        if (shop.getAvgPrice() != null) buffer.putLong(shop.getAvgPrice());
+        if (shop.getSold() != null) buffer.putInt(shop.getSold());
+        if (shop.getComments() != null) buffer.putInt(shop.getComments());
+        if (shop.getScore() != null) buffer.putInt(shop.getScore());
+        if (openHours != null) putBytes(buffer, openHours);
+        if (shop.getCreateTime() != null) buffer.putLong(toMillis(shop.getCreateTime()));
+        if (shop.getUpdateTime() != null) buffer.putLong(toMillis(shop.getUpdateTime()));
+        return buffer.array();
+    }
+
+    @Override
+    public RedisData decode(byte[] bytes) {
+        if (bytes.length == 0) {
+            return null;
+        }
+        // 1.不是二进制格式，按旧的JSON格式解析
+        if (bytes[0] != MAGIC) {
+            return jsonCodec.decode(bytes);
+        }
+        // 2.不认识的版本，按未命中处理，由调用方重建
+        if (bytes.length < HEADER_SIZE || bytes[1] != VERSION) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 2, bytes.length - 2);
+        long expireMillis = buffer.getLong();
+        int mask = buffer.getShort() & 0xFFFF;
+        RedisData redisData = new RedisData();
+        redisData.setExpireTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(expireMillis), ZoneId.systemDefault()));
+        if (mask == 0) {
+            return redisData;
+        }
+        // 3.按写入顺序读取字段
+        Shop shop = new Shop();
+        if ((mask & 1) != 0) shop.setId(buffer.getLong());
+        if ((mask & 1 << 1) != 0) shop.setName(getString(buffer));
+        if ((mask & 1 << 2) != 0) shop.setTypeId(buffer.getLong());
+        if ((mask & 1 << 3) != 0) shop.setImages(getString(buffer));
+        if ((mask & 1 << 4) != 0) shop.setArea(getString(buffer));
+        if ((mask & 1 << 5) != 0) shop.setAddress(getString(buffer));
+        if ((mask & 1 << 6) != 0) shop.setX(buffer.getDouble());
+        if ((mask & 1 << 7) != 0) shop.setY(buffer.getDouble());
+        if ((mask & 1 << 8) != 0) shop.setAvgPrice(buffer.getLong());
+        if ((mask & 1 << 9) != 0) shop.setSold(buffer.getInt());
+        if ((mask & 1 << 10) != 0) shop.setComments(buffer.getInt());
+        if ((mask & 1 << 11) != 0) shop.setScore(buffer.getInt());
+        if ((mask & 1 << 12) != 0) shop.setOpenHours(getString(buffer));
+        if ((mask & 1 << 13) != 0) shop.setCreateTime(fromMillis(buffer.getLong()));
+        if ((mask & 1 << 14) != 0) shop.setUpdateTime(fromMillis(buffer.getLong()));
+        redisData.setData(shop);
+        return redisData;
+    }
+
+    private static byte[] bytes(String s) {
+        return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        String s = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return s;
+    }
+
+    // LocalDateTime本身不带时区，按UTC换算只是为了得到一个可逆的long，不改变原始的时间值
+    private static long toMillis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime fromMillis(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,244 @@
+package com.xmdp.utils;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 店铺名称的倒排索引，代替 like '%name%' 的全表扫描
+ * 1.名称按相邻的两个字切分（bigram），中文没有空格分词，两个字一组正好覆盖大部分词；单个字也建立索引，用于只输入一个字的查询
+ * 2.查询时取关键字所有bigram的倒排列表求交集，再用名称校验、排序：前缀匹配 > 包含关键字 > 包含所有bigram但不连续，同一档名称越短越靠前
+ * 3.倒排列表是有序的long[]，更新时复制一份再替换，查询不加锁；更新之间用synchronized串行
+ */
+@Component
+public class ShopNameIndex {
+
+    private volatile Snapshot snapshot = new Snapshot();
+
+    /**
+     * 用全部店铺重建索引，构建完成后整体替换，构建期间查询仍然使用旧索引
+     * @param names 店铺id -> 名称
+     */
+    public synchronized void rebuild(Map<Long, String> names) {
+        Snapshot next = new Snapshot();
+        // 1.先按gram收集id，最后统一排序，避免逐个插入时反复复制数组
+        Map<Integer, List<Long>> lists = new HashMap<>();
+        for (Map.Entry<Long, String> entry : names.entrySet()) {
+            String name = normalize(entry.getValue());
+            next.names.put(entry.getKey(), name);
+            for (int gram : grams(name)) {
+                lists.computeIfAbsent(gram, k -> new ArrayList<>()).add(entry.getKey());
+            }
+        }
+        // 2.转换成有序数组
+        for (Map.Entry<Integer, List<Long>> entry : lists.entrySet()) {
+            long[] ids = entry.getValue().stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(ids);
+            next.postings.put(entry.getKey(), ids);
+        }
+        snapshot = next;
+    }
+
+    /**
+     * 新增或修改一个店铺的名称
+     */
+    public synchronized void put(long shopId, String name) {
+        Snapshot current = snapshot;
+        String normalized = normalize(name);
+        String old = current.names.get(shopId);
+        if (normalized.equals(old)) {
+            return;
+        }
+        Set<Integer> oldGrams = old == null ? new HashSet<>() : grams(old);
+        Set<Integer> newGrams = grams(normalized);
+        // 只更新有变化的gram
+        for (int gram : oldGrams) {
+            if (!newGrams.contains(gram)) {
+                current.remove(gram, shopId);
+            }
+        }
+        for (int gram : newGrams) {
+            if (!oldGrams.contains(gram)) {
+                current.add(gram, shopId);
+            }
+        }
+        current.names.put(shopId, normalized);
+    }
+
+    public int size() {
+        return snapshot.names.size();
+    }
+
+    /**
+     * 按名称关键字查询
+     * @param keyword 关键字
+     * @param offset 跳过的数量，小于0时按0处理
+     * @param limit 返回的数量
+     * @return 店铺id，按相关度排序
+     */
+    public List<Long> search(String keyword, int offset, int limit) {
+        String query = normalize(keyword);
+        Snapshot current = snapshot;
+        if (query.isEmpty()) {
+            return new ArrayList<>();
+        }
+        // 1.关键字的所有gram，一个字的关键字只有一个单字gram
+        Set<Integer> grams = query.length() == 1 ? grams(query) : bigrams(query);
+        List<long[]> lists = new ArrayList<>(grams.size());
+        for (int gram : grams) {
+            long[] ids = current.postings.get(gram);
+            if (ids == null) {
+                // 任意一个gram没有出现过，不可能匹配
+                return new ArrayList<>();
+            }
+            lists.add(ids);
+        }
+        // 2.从最短的列表开始求交集
+        lists.sort(Comparator.comparingInt(ids -> ids.length));
+        long[] candidates = lists.get(0);
+        for (int i = 1; i < lists.size() && candidates.length > 0; i++) {
+            candidates = intersect(candidates, lists.get(i));
+        }
+        // 3.打分排序
+        List<Hit> hits = new ArrayList<>(candidates.length);
+        for (long id : candidates) {
+            String name = current.names.get(id);
+            if (name == null) {
+                continue;
+            }
+            int rank = name.startsWith(query) ? 0 : name.contains(query) ? 1 : 2;
+            hits.add(new Hit(id, rank, name.length()));
+        }
+        hits.sort(Comparator.comparingInt((Hit hit) -> hit.rank)
+                .thenComparingInt(hit -> hit.length)
+                .thenComparingLong(hit -> hit.id));
+        // 4.分页
+        offset = Math.max(0, offset);
+        List<Long> result = new ArrayList<>(Math.max(0, Math.min(limit, hits.size() - offset)));
+        for (int i = offset; i < hits.size() && result.size() < limit; i++) {
+            result.add(hits.get(i).id);
+        }
+        return result;
+    }
+
+    // 去掉空白，英文统一小写
+    private static String normalize(String name) {
+        if (name == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    // 建立索引用的gram：所有单字和相邻的两个字
+    private static Set<Integer> grams(String name) {
+        Set<Integer> grams = bigrams(name);
+        for (int i = 0; i < name.length(); i++) {
+            grams.add(gram(name.charAt(i), '\0'));
+        }
+        return grams;
+    }
+
+    private static Set<Integer> bigrams(String name) {
+        Set<Integer> grams = new HashSet<>();
+        for (int i = 0; i + 1 < name.length(); i++) {
+            grams.add(gram(name.charAt(i), name.charAt(i + 1)));
+        }
+        return grams;
+    }
+
+    // 两个char拼成一个int，单字的第二个char为0
+    private static int gram(char first, char second) {
+        return (first << 16) | second;
+    }
+
+    // 两个有序数组求交集
+    private static long[] intersect(long[] a, long[] b) {
+        long[] result = new long[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private static class Snapshot {
+        // gram -> 有序的店铺id
+        private final Map<Integer, long[]> postings = new ConcurrentHashMap<>();
+        // 店铺id -> 规范化之后的名称
+        private final Map<Long, String> names = new ConcurrentHashMap<>();
+
+        void add(int gram, long shopId) {
+            long[] ids = postings.get(gram);
+            if (ids == null) {
+                postings.put(gram, new long[]{shopId});
+                return;
+            }
+            int index = Arrays.binarySearch(ids, shopId);
+            if (index >= 0) {
+                return;
+            }
+            int insert = -index - 1;
+            long[] newIds = new long[ids.length + 1];
+            System.arraycopy(ids, 0, newIds, 0, insert);
+            newIds[insert] = shopId;
+            System.arraycopy(ids, insert, newIds, insert + 1, ids.length - insert);
+            postings.put(gram, newIds);
+        }
+
+        void remove(int gram, long shopId) {
+            long[] ids = postings.get(gram);
+            if (ids == null) {
+                return;
+            }
+            int index = Arrays.binarySearch(ids, shopId);
+            if (index < 0) {
+                return;
+            }
+            if (ids.length == 1) {
+                postings.remove(gram);
+                return;
+            }
+            long[] newIds = new long[ids.length - 1];
+            System.arraycopy(ids, 0, newIds, 0, index);
+            System.arraycopy(ids, index + 1, newIds, index, newIds.length - index);
+            postings.put(gram, newIds);
+        }
+    }
+
+    private static class Hit {
+        private final long id;
+        private final int rank;
+        private final int length;
+
+        Hit(long id, int rank, int length) {
+            this.id = id;
+            this.rank = rank;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,428 @@
+package com.xmdp.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 店铺坐标的进程内空间索引，附近商铺查询不需要访问redis
+ * 1.每个店铺类型一张网格，经纬度按cellDegrees切分成格子，每个格子用基本类型数组保存店铺id和坐标
+ * 2.查询从查询点所在的格子一圈一圈向外扩展，直到不可能再有更近的店铺，半径查询最多扩展到覆盖整个圆
+ * 3.格子是不可变的，更新时复制一份再整体替换，查询不加锁；更新之间用synchronized串行
+ * 距离的计算方式与redis的GEO命令一致
+ */
+@Component
+public class ShopSpatialIndex {
+
+    // redis GEO使用的地球半径，单位米
+    private static final double EARTH_RADIUS = 6372797.560856;
+    // 纬度方向每度的长度，单位米
+    private static final double METERS_PER_DEGREE = EARTH_RADIUS * Math.PI / 180;
+
+    // 格子的边长，单位度
+    private final double cellDegrees;
+
+    // 店铺类型 -> 网格
+    private final Map<Long, Grid> grids = new ConcurrentHashMap<>();
+    // 店铺id -> 当前所在的位置，用于增量更新时找到旧的格子
+    private final Map<Long, Location> locations = new ConcurrentHashMap<>();
+
+    public ShopSpatialIndex(@Value("${xmdp.geo.cell-degrees:0.01}") double cellDegrees) {
+        this.cellDegrees = cellDegrees;
+    }
+
+    /**
+     * 新增或移动一个店铺
+     * @param x 经度
+     * @param y 纬度
+     */
+    public synchronized void put(long shopId, long typeId, double x, double y) {
+        Location old = locations.get(shopId);
+        if (old != null) {
+            if (old.typeId == typeId && old.x == x && old.y == y) {
+                return;
+            }
+            removeFromGrid(shopId, old);
+        }
+        Location location = new Location(typeId, x, y);
+        grids.computeIfAbsent(typeId, k -> new Grid()).add(cellX(x), cellY(y), shopId, x, y);
+        locations.put(shopId, location);
+    }
+
+    /**
+     * 移除一个店铺
+     */
+    public synchronized void remove(long shopId) {
+        Location old = locations.remove(shopId);
+        if (old != null) {
+            removeFromGrid(shopId, old);
+        }
+    }
+
+    public int size() {
+        return locations.size();
+    }
+
+    /**
+     * 半径查询，按距离由近到远排序
+     * @param x 经度
+     * @param y 纬度
+     * @param radiusMeters 半径，单位米
+     * @param limit 最多返回的数量
+     */
+    public Hits radius(long typeId, double x, double y, double radiusMeters, int limit) {
+        return search(typeId, x, y, radiusMeters, limit);
+    }
+
+    /**
+     * k近邻查询，按距离由近到远排序
+     * @param x 经度
+     * @param y 纬度
+     * @param k 返回的数量
+     */
+    public Hits nearest(long typeId, double x, double y, int k) {
+        return search(typeId, x, y, Double.MAX_VALUE, k);
+    }
+
+    /**
+     * 从查询点所在的格子开始一圈一圈向外扫描，只保留最近的limit个
+     * 扫描完第r圈后，没扫描到的店铺距离至少是 r * 格子边长，第limit近的店铺比这还近时就可以结束，
+     * 所以只取前几个结果时，无论半径多大都只需要扫描附近的几个格子
+     */
+    private Hits search(long typeId, double x, double y, double maxMeters, int limit) {
+        Hits hits = new Hits(x, y, maxMeters, limit);
+        Grid grid = grids.get(typeId);
+        if (grid == null || limit <= 0 || grid.cells.isEmpty()) {
+            return hits.finish();
+        }
+        int centerX = cellX(x);
+        int centerY = cellY(y);
+        // 1.最多扫描到覆盖整张网格，有半径时再限制到覆盖整个圆
+        int maxRing = Math.max(Math.max(centerX - grid.minCx, grid.maxCx - centerX),
+                Math.max(centerY - grid.minCy, grid.maxCy - centerY));
+        if (maxMeters < Double.MAX_VALUE) {
+            double dy = maxMeters / METERS_PER_DEGREE;
+            double dx = maxMeters / (METERS_PER_DEGREE * Math.max(Math.cos(Math.toRadians(Math.min(Math.abs(y) + dy, 89.9))), 1e-6));
+            maxRing = Math.min(maxRing, (int) Math.ceil(Math.max(dx, dy) / cellDegrees) + 1);
+        }
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // 2.扫描第ring圈的格子
+            for (int cx = centerX - ring; cx <= centerX + ring; cx++) {
+                boolean edgeX = cx == centerX - ring || cx == centerX + ring;
+                // 左右两列扫描整列，中间的列只扫描上下两个格子
+                int step = edgeX || ring == 0 ? 1 : 2 * ring;
+                for (int cy = centerY - ring; cy <= centerY + ring; cy += step) {
+                    Cell cell = grid.cells.get(cellKey(cx, cy));
+                    if (cell != null) {
+                        cell.collect(hits);
+                    }
+                }
+            }
+            // 3.已经找到limit个，且第limit个比所有没扫描的格子都近，结束
+            // 经度方向的格子边长随纬度变短，按没扫描的格子中纬度最高的一边计算
+            double side = cellDegrees * METERS_PER_DEGREE
+                    * Math.cos(Math.toRadians(Math.min(Math.abs(y) + (ring + 1) * cellDegrees, 89.9)));
+            if (hits.isFull() && hits.worstMeters() <= ring * side) {
+                break;
+            }
+        }
+        return hits.finish();
+    }
+
+    private void removeFromGrid(long shopId, Location old) {
+        Grid grid = grids.get(old.typeId);
+        if (grid != null) {
+            grid.remove(cellX(old.x), cellY(old.y), shopId);
+        }
+    }
+
+    private int cellX(double x) {
+        return (int) Math.floor(x / cellDegrees);
+    }
+
+    private int cellY(double y) {
+        return (int) Math.floor(y / cellDegrees);
+    }
+
+    private static long cellKey(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+
+    /**
+     * 两点之间的距离，与redis的GEODIST一致（haversine公式），单位米
+     */
+    public static double distance(double x1, double y1, double x2, double y2) {
+        double lat1 = Math.toRadians(y1);
+        double lat2 = Math.toRadians(y2);
+        double u = Math.sin((lat2 - lat1) / 2);
+        double v = Math.sin(Math.toRadians(x2 - x1) / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.sqrt(u * u + Math.cos(lat1) * Math.cos(lat2) * v * v));
+    }
+
+    /**
+     * 查询结果，店铺id和距离按下标一一对应
+     * 查询过程中是按haversine值排列的大顶堆，只保留最近的limit个，结束后转换为按距离升序的数组
+     */
+    public static class Hits {
+        // 查询点，弧度
+        private final double lonR;
+        private final double latR;
+        private final double cosLat;
+        private final int limit;
+        // 在半径之外的直接丢弃，用haversine值比较，不需要计算反三角函数
+        private final double maxH;
+
+        private long[] ids = new long[16];
+        // 查询中为haversine值，结束后为距离
+        private double[] values = new double[16];
+        private int size;
+        // 第limit近的店铺对应的纬度差（弧度），纬度差比它还大的店铺不可能更近，不需要计算距离
+        private double pruneLat = Double.MAX_VALUE;
+
+        Hits(double x, double y, double maxMeters, int limit) {
+            this.lonR = Math.toRadians(x);
+            this.latR = Math.toRadians(y);
+            this.cosLat = Math.cos(latR);
+            this.limit = limit;
+            if (maxMeters < Math.PI * EARTH_RADIUS) {
+                double s = Math.sin(maxMeters / EARTH_RADIUS / 2);
+                this.maxH = s * s;
+                this.pruneLat = maxMeters / EARTH_RADIUS;
+            } else {
+                this.maxH = Double.MAX_VALUE;
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long getId(int i) {
+            return ids[i];
+        }
+
+        /**
+         * 距离，单位米
+         */
+        public double getDistance(int i) {
+            return values[i];
+        }
+
+        void offer(long id, double lonR2, double latR2, double cosLat2) {
+            double dLat = latR2 - latR;
+            if (Math.abs(dLat) > pruneLat) {
+                return;
+            }
+            // haversine：h = sin²(Δlat/2) + cos(lat1)cos(lat2)sin²(Δlon/2)，距离 = 2R·asin(√h)
+            double u = Math.sin(dLat / 2);
+            double v = Math.sin((lonR2 - lonR) / 2);
+            double h = u * u + cosLat * cosLat2 * v * v;
+            if (h > maxH) {
+                return;
+            }
+            if (size < limit) {
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, size * 2);
+                    values = Arrays.copyOf(values, size * 2);
+                }
+                ids[size] = id;
+                values[size] = h;
+                siftUp(size++);
+                if (size == limit) {
+                    updatePrune();
+                }
+            } else if (h < values[0]) {
+                // 比堆顶（当前第limit近）更近，替换堆顶
+                ids[0] = id;
+                values[0] = h;
+                siftDown(0);
+                updatePrune();
+            }
+        }
+
+        boolean isFull() {
+            return size >= limit;
+        }
+
+        // 当前第limit近的距离，单位米
+        double worstMeters() {
+            return toMeters(values[0]);
+        }
+
+        // 堆排序成升序，再把haversine值转换成距离
+        Hits finish() {
+            for (int end = size - 1; end > 0; end--) {
+                swap(0, end);
+                int n = size;
+                size = end;
+                siftDown(0);
+                size = n;
+            }
+            for (int i = 0; i < size; i++) {
+                values[i] = toMeters(values[i]);
+            }
+            return this;
+        }
+
+        private void updatePrune() {
+            pruneLat = 2 * Math.asin(Math.sqrt(Math.min(1, values[0])));
+        }
+
+        private static double toMeters(double h) {
+            return 2 * EARTH_RADIUS * Math.asin(Math.sqrt(Math.min(1, h)));
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (values[parent] >= values[i]) {
+                    return;
+                }
+                swap(parent, i);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int left = 2 * i + 1;
+                if (left >= size) {
+                    return;
+                }
+                int largest = left + 1 < size && values[left + 1] > values[left] ? left + 1 : left;
+                if (values[i] >= values[largest]) {
+                    return;
+                }
+                swap(i, largest);
+                i = largest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            long id = ids[a];
+            ids[a] = ids[b];
+            ids[b] = id;
+            double d = values[a];
+            values[a] = values[b];
+            values[b] = d;
+        }
+    }
+
+    // 一个店铺类型的网格
+    private static class Grid {
+        private final Map<Long, Cell> cells = new ConcurrentHashMap<>();
+        // 有数据的格子的范围，只会扩大，不会缩小
+        private volatile int minCx = Integer.MAX_VALUE;
+        private volatile int maxCx = Integer.MIN_VALUE;
+        private volatile int minCy = Integer.MAX_VALUE;
+        private volatile int maxCy = Integer.MIN_VALUE;
+
+        void add(int cx, int cy, long shopId, double x, double y) {
+            long key = cellKey(cx, cy);
+            Cell old = cells.get(key);
+            cells.put(key, (old == null ? Cell.EMPTY : old).with(shopId, x, y));
+            minCx = Math.min(minCx, cx);
+            maxCx = Math.max(maxCx, cx);
+            minCy = Math.min(minCy, cy);
+            maxCy = Math.max(maxCy, cy);
+        }
+
+        void remove(int cx, int cy, long shopId) {
+            long key = cellKey(cx, cy);
+            Cell old = cells.get(key);
+            if (old == null) {
+                return;
+            }
+            Cell cell = old.without(shopId);
+            if (cell == null) {
+                cells.remove(key);
+            } else {
+                cells.put(key, cell);
+            }
+        }
+    }
+
+    // 一个格子中的店铺，不可变，坐标提前转换成弧度并计算好cos(纬度)，查询时少算一次三角函数
+    private static class Cell {
+        private final long[] ids;
+        private final double[] lonRs;
+        private final double[] latRs;
+        private final double[] cosLats;
+
+        private static final Cell EMPTY = new Cell(new long[0], new double[0], new double[0], new double[0]);
+
+        private Cell(long[] ids, double[] lonRs, double[] latRs, double[] cosLats) {
+            this.ids = ids;
+            this.lonRs = lonRs;
+            this.latRs = latRs;
+            this.cosLats = cosLats;
+        }
+
+        Cell with(long shopId, double x, double y) {
+            int n = ids.length;
+            long[] newIds = Arrays.copyOf(ids, n + 1);
+            double[] newLonRs = Arrays.copyOf(lonRs, n + 1);
+            double[] newLatRs = Arrays.copyOf(latRs, n + 1);
+            double[] newCosLats = Arrays.copyOf(cosLats, n + 1);
+            newIds[n] = shopId;
+            newLonRs[n] = Math.toRadians(x);
+            newLatRs[n] = Math.toRadians(y);
+            newCosLats[n] = Math.cos(newLatRs[n]);
+            return new Cell(newIds, newLonRs, newLatRs, newCosLats);
+        }
+
+        // 移除后格子为空时返回null
+        Cell without(long shopId) {
+            int index = -1;
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] == shopId) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                return this;
+            }
+            int n = ids.length - 1;
+            if (n == 0) {
+                return null;
+            }
+            return new Cell(removeAt(ids, index), removeAt(lonRs, index), removeAt(latRs, index), removeAt(cosLats, index));
+        }
+
+        void collect(Hits hits) {
+            for (int i = 0; i < ids.length; i++) {
+                hits.offer(ids[i], lonRs[i], latRs[i], cosLats[i]);
+            }
+        }
+
+        private static long[] removeAt(long[] array, int index) {
+            long[] result = new long[array.length - 1];
+            System.arraycopy(array, 0, result, 0, index);
+            System.arraycopy(array, index + 1, result, index, result.length - index);
+            return result;
+        }
+
+        private static double[] removeAt(double[] array, int index) {
+            double[] result = new double[array.length - 1];
+            System.arraycopy(array, 0, result, 0, index);
+            System.arraycopy(array, index + 1, result, index, result.length - index);
+            return result;
+        }
+    }
+
+    private static class Location {
+        private final long typeId;
+        private final double x;
+        private final double y;
+
+        Location(long typeId, double x, double y) {
+            this.typeId = typeId;
+            this.x = x;
+            this.y = y;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.xmdp.utils;
+
+import com.xmdp.dto.ShopSuggestion;
+import com.xmdp.entity.Shop;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 搜索框的前缀联想：店铺名称和商圈按前缀匹配，返回热度最高的几个
+ * 1.所有联想词规范化（去掉空白、英文小写）后排序成一个数组，同一个前缀的词在数组中是连续的一段，两次二分查找就能定位
+ * 2.热度：店铺为 (销量 + 1) * 评分，商圈为所属店铺的热度之和
+ * 3.在这一段中取热度最高的k个：用稀疏表（sparse table）O(1)查询任意区间的最大值，
+ *   取出最大值后把区间从最大值处拆成左右两段继续比较，共O(k)次查询，与前缀匹配到的词数无关
+ * 4.联想词对象在建立索引时创建好，查询只分配结果列表和几个长度为k的数组
+ * 数据只在启动和定时刷新时整体重建，热度变化很慢，不做增量更新
+ */
+@Component
+public class ShopSuggestIndex {
+
+    private volatile Snapshot snapshot = new Snapshot(new String[0], new long[0], new ShopSuggestion[0]);
+
+    /**
+     * 用全部店铺重建索引，构建完成后整体替换
+     * @param shops 店铺，需要id、name、area、sold、score
+     */
+    public void rebuild(List<Shop> shops) {
+        List<Entry> entries = new ArrayList<>(shops.size() + 64);
+        Map<String, Entry> areas = new HashMap<>();
+        for (Shop shop : shops) {
+            long weight = weight(shop);
+            // 1.店铺名称
+            String key = normalize(shop.getName());
+            if (!key.isEmpty()) {
+                entries.add(new Entry(key, weight,
+                        new ShopSuggestion(shop.getName(), ShopSuggestion.TYPE_SHOP, shop.getId())));
+            }
+            // 2.商圈，热度累加
+            String area = normalize(shop.getArea());
+            if (!area.isEmpty()) {
+                Entry entry = areas.get(area);
+                if (entry == null) {
+                    entry = new Entry(area, 0, new ShopSuggestion(shop.getArea().trim(), ShopSuggestion.TYPE_AREA, null));
+                    areas.put(area, entry);
+                    entries.add(entry);
+                }
+                entry.weight += weight;
+            }
+        }
+        // 3.按规范化之后的文字排序，相同的按热度倒序
+        entries.sort((a, b) -> {
+            int c = a.key.compareTo(b.key);
+            return c != 0 ? c : Long.compare(b.weight, a.weight);
+        });
+        int n = entries.size();
+        String[] keys = new String[n];
+        long[] weights = new long[n];
+        ShopSuggestion[] suggestions = new ShopSuggestion[n];
+        for (int i = 0; i < n; i++) {
+            Entry entry = entries.get(i);
+            keys[i] = entry.key;
+            weights[i] = entry.weight;
+            suggestions[i] = entry.suggestion;
+        }
+        snapshot = new Snapshot(keys, weights, suggestions);
+    }
+
+    public int size() {
+        return snapshot.keys.length;
+    }
+
+    /**
+     * 前缀联想
+     * @param prefix 用户已经输入的内容
+     * @param limit 返回的数量
+     * @return 按热度倒序的联想词
+     */
+    public List<ShopSuggestion> suggest(String prefix, int limit) {
+        String query = normalize(prefix);
+        Snapshot current = snapshot;
+        if (query.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        // 1.二分查找前缀对应的区间[from, to)
+        int from = lowerBound(current.keys, query, 0);
+        int to = lowerBound(current.keys, query, 1);
+        if (from >= to) {
+            return Collections.emptyList();
+        }
+        // 2.候选区间，每一轮取出最大值最大的区间，拆成两段放回，最多同时有limit+1个区间
+        int size = Math.min(limit, to - from);
+        int[] starts = new int[size + 1];
+        int[] ends = new int[size + 1];
+        int[] maxes = new int[size + 1];
+        starts[0] = from;
+        ends[0] = to;
+        maxes[0] = current.argMax(from, to);
+        int count = 1;
+        List<ShopSuggestion> result = new ArrayList<>(size);
+        while (result.size() < size) {
+            int best = 0;
+            for (int i = 1; i < count; i++) {
+                if (current.better(maxes[i], maxes[best])) {
+                    best = i;
+                }
+            }
+            int max = maxes[best];
+            int start = starts[best];
+            int end = ends[best];
+            result.add(current.suggestions[max]);
+            // 移除这个区间，放入左右两段
+            count--;
+            starts[best] = starts[count];
+            ends[best] = ends[count];
+            maxes[best] = maxes[count];
+            if (start < max) {
+                starts[count] = start;
+                ends[count] = max;
+                maxes[count] = current.argMax(start, max);
+                count++;
+            }
+            if (max + 1 < end) {
+                starts[count] = max + 1;
+                ends[count] = end;
+                maxes[count] = current.argMax(max + 1, end);
+                count++;
+            }
+        }
+        return result;
+    }
+
+    // (销量 + 1) * 评分，没有销量的店铺按评分排序
+    private static long weight(Shop shop) {
+        long sold = shop.getSold() == null ? 0 : Math.max(0, shop.getSold());
+        long score = shop.getScore() == null ? 0 : Math.max(0, shop.getScore());
+        return (sold + 1) * score;
+    }
+
+    // 第一个不小于query的位置，bound为1时是第一个前缀大于query的位置
+    private static int lowerBound(String[] keys, String query, int bound) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparePrefix(keys[mid], query) < bound) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // 只比较key的前query.length()个字符，不截取字符串
+    private static int comparePrefix(String key, String query) {
+        int n = Math.min(key.length(), query.length());
+        for (int i = 0; i < n; i++) {
+            char a = key.charAt(i);
+            char b = query.charAt(i);
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return key.length() >= query.length() ? 0 : -1;
+    }
+
+    // 去掉空白，英文统一小写
+    private static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static class Entry {
+        private final String key;
+        private long weight;
+        private final ShopSuggestion suggestion;
+
+        Entry(String key, long weight, ShopSuggestion suggestion) {
+            this.key = key;
+            this.weight = weight;
+            this.suggestion = suggestion;
+        }
+    }
+
+    private static class Snapshot {
+        private final String[] keys;
+        private final long[] weights;
+        private final ShopSuggestion[] suggestions;
+        // table[j][i]：区间[i, i + 2^j)中热度最高的位置
+        private final int[][] table;
+
+        Snapshot(String[] keys, long[] weights, ShopSuggestion[] suggestions) {
+            this.keys = keys;
+            this.weights = weights;
+            this.suggestions = suggestions;
+            int n = keys.length;
+            int levels = n == 0 ? 1 : 32 - Integer.numberOfLeadingZeros(n);
+            this.table = new int[levels][];
+            int[] first = new int[n];
+            for (int i = 0; i < n; i++) {
+                first[i] = i;
+            }
+            table[0] = first;
+            for (int j = 1; j < levels; j++) {
+                int half = 1 << (j - 1);
+                int[] prev = table[j - 1];
+                int[] level = new int[n - (1 << j) + 1];
+                for (int i = 0; i < level.length; i++) {
+                    int a = prev[i];
+                    int b = prev[i + half];
+                    level[i] = better(b, a) ? b : a;
+                }
+                table[j] = level;
+            }
+        }
+
+        // 区间[from, to)中热度最高的位置，两个重叠的2^j区间取较大的
+        int argMax(int from, int to) {
+            int j = 31 - Integer.numberOfLeadingZeros(to - from);
+            int a = table[j][from];
+            int b = table[j][to - (1 << j)];
+            return better(b, a) ? b : a;
+        }
+
+        // 热度更高，热度相同时排在前面的（更短）优先
+        boolean better(int a, int b) {
+            return weights[a] > weights[b] || (weights[a] == weights[b] && a < b);
+        }
+    }
+}
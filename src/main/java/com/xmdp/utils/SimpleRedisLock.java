@@ -0,0 +1,117 @@
+package com.xmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于redis的可重入分布式锁
+ * 1.value存持有者标识（JVM的UUID + 线程id），释放时判断是自己的锁才删除，不会误删别人的锁
+ * 2.判断和删除在同一个Lua脚本中执行，保证原子性
+ * 3.hash结构记录重入次数，同一个线程可以重复获取
+ * 4.不指定有效期时由看门狗定期续期，业务执行时间超过有效期也不会丢锁
+ * 通过RedisLockFactory创建
+ */
+@Slf4j
+public class SimpleRedisLock implements ILock {
+
+    // 每个JVM一个UUID，区分不同节点中相同id的线程
+    private static final String ID_PREFIX = UUID.randomUUID().toString(true) + "-";
+
+    private static final DefaultRedisScript<Long> LOCK_SCRIPT;
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT;
+
+    static {
+        LOCK_SCRIPT = new DefaultRedisScript<>();
+        LOCK_SCRIPT.setLocation(new ClassPathResource("lock.lua"));
+        LOCK_SCRIPT.setResultType(Long.class);
+        UNLOCK_SCRIPT = new DefaultRedisScript<>();
+        UNLOCK_SCRIPT.setLocation(new ClassPathResource("unlock.lua"));
+        UNLOCK_SCRIPT.setResultType(Long.class);
+    }
+
+    private final String key;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisLockFactory lockFactory;
+
+    // 获取成功时的持有者标识和有效期，释放时使用，所以获取锁和释放锁可以不在同一个线程
+    private volatile String ownerToken;
+    private volatile long leaseMillis;
+
+    SimpleRedisLock(String key, StringRedisTemplate stringRedisTemplate, RedisLockFactory lockFactory) {
+        this.key = key;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.lockFactory = lockFactory;
+    }
+
+    @Override
+    public boolean tryLock() {
+        return acquire(lockFactory.getDefaultLeaseMillis(), true);
+    }
+
+    @Override
+    public boolean tryLock(long waitTime, TimeUnit unit) throws InterruptedException {
+        return waitAndAcquire(unit.toMillis(waitTime), lockFactory.getDefaultLeaseMillis(), true);
+    }
+
+    @Override
+    public boolean tryLock(long waitTime, long leaseTime, TimeUnit unit) throws InterruptedException {
+        return waitAndAcquire(unit.toMillis(waitTime), unit.toMillis(leaseTime), false);
+    }
+
+    private boolean waitAndAcquire(long waitMillis, long leaseMillis, boolean watchdog) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + waitMillis;
+        while (true) {
+            if (acquire(leaseMillis, watchdog)) {
+                return true;
+            }
+            long remain = deadline - System.currentTimeMillis();
+            if (remain <= 0) {
+                return false;
+            }
+            // 随机退避，避免大量线程同时重试
+            Thread.sleep(Math.min(remain, 20 + ThreadLocalRandom.current().nextInt(30)));
+        }
+    }
+
+    private boolean acquire(long leaseMillis, boolean watchdog) {
+        String token = ID_PREFIX + Thread.currentThread().getId();
+        Long result = stringRedisTemplate.execute(LOCK_SCRIPT, Collections.singletonList(key),
+                token, String.valueOf(leaseMillis));
+        if (result == null || result != 1L) {
+            return false;
+        }
+        this.ownerToken = token;
+        this.leaseMillis = leaseMillis;
+        if (watchdog) {
+            lockFactory.scheduleRenewal(key, token, leaseMillis);
+        }
+        return true;
+    }
+
+    @Override
+    public void unlock() {
+        String token = this.ownerToken;
+        if (token == null) {
+            return;
+        }
+        Long result = stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(key),
+                token, String.valueOf(leaseMillis));
+        if (result == null || result == -1L) {
+            // 锁已经过期，可能被其他人拿走了
+            log.warn("释放锁失败，锁已过期或不属于当前持有者，key：{}", key);
+            lockFactory.cancelRenewal(key, token);
+            return;
+        }
+        if (result == 1L) {
+            // 完全释放，停止续期
+            lockFactory.cancelRenewal(key, token);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.xmdp.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 进程内的请求合并（single-flight）
+ * 同一个key同一时刻只有一个线程（leader）真正去执行加载逻辑，其余线程等待leader的结果，
+ * 缓存大面积失效时，一个节点对同一个key只会产生一次redis/数据库访问
+ */
+public class SingleFlight {
+
+    // 正在执行中的加载任务，key -> 加载结果
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+
+    /**
+     * @param key 合并的key
+     * @param loader 真正的加载逻辑，只有leader线程会执行
+     * @param timeout 等待leader结果的最长时间
+     * @param unit 时间单位
+     */
+    @SuppressWarnings("unchecked")
+    public <R> R execute(String key, Supplier<R> loader, long timeout, TimeUnit unit) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = calls.putIfAbsent(key, future);
+        if (inFlight == null) {
+            // 1.没有正在执行的任务，当前线程就是leader，负责加载
+            try {
+                R r = loader.get();
+                future.complete(r);
+                return r;
+            } catch (RuntimeException | Error e) {
+                future.completeExceptionally(e);
+                throw e;
+            } finally {
+                // 加载结束就移除，之后的请求重新走缓存，不会一直拿到旧的结果
+                calls.remove(key, future);
+            }
+        }
+        // 2.已经有线程在加载，等待它的结果
+        try {
+            return (R) inFlight.get(timeout, unit);
+        } catch (TimeoutException e) {
+            throw new RuntimeException("等待数据加载超时，key：" + key, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 当前正在加载中的key数量
+     */
+    public int inFlightCount() {
+        return calls.size();
+    }
+}
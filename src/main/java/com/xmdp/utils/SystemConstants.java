@@ -5,4 +5,10 @@ public class SystemConstants {
     public static final String USER_NICK_NAME_PREFIX = "user_";
     public static final int DEFAULT_PAGE_SIZE = 5;
     public static final int MAX_PAGE_SIZE = 10;
+    public static final int MAX_BATCH_SIZE = 100;
+    public static final int SHOP_OF_TYPE_CACHED_PAGES = 5;
+    // 附近商铺的搜索半径，单位米
+    public static final double NEARBY_SHOP_RADIUS = 5000;
+    // 搜索框联想词的数量
+    public static final int SHOP_SUGGEST_SIZE = 10;
 }
@@ -0,0 +1,19 @@
+-- 可重入锁：hash结构，field为持有者标识，value为重入次数
+-- KEYS[1]：锁的key；ARGV[1]：持有者标识；ARGV[2]：有效期（毫秒）
+local key = KEYS[1]
+local owner = ARGV[1]
+local releaseTime = ARGV[2]
+-- 锁不存在，直接获取
+if (redis.call('exists', key) == 0) then
+    redis.call('hset', key, owner, 1)
+    redis.call('pexpire', key, releaseTime)
+    return 1
+end
+-- 锁存在，判断是否是自己持有的，是则重入次数+1
+if (redis.call('hexists', key, owner) == 1) then
+    redis.call('hincrby', key, owner, 1)
+    redis.call('pexpire', key, releaseTime)
+    return 1
+end
+-- 被其他人持有，获取失败
+return 0
@@ -0,0 +1,38 @@
+-- 秒杀下单：校验时间、库存、一人一单，通过后扣减库存、记录下单用户并把订单写入消息队列，整个过程原子执行
+-- KEYS[1]：秒杀券 seckill:stock:{voucherId}，hash，字段stock、begin、end（毫秒时间戳）
+-- KEYS[2]：已下单的用户 seckill:order:{voucherId}，set
+-- KEYS[3]：订单消息队列 stream:seckill:order；KEYS[4]：订单id的序列号 icr:order:{yyyy:MM:dd}
+-- ARGV[1]：用户id；ARGV[2]：当前时间（毫秒）；ARGV[3]：订单id的时间戳；ARGV[4]：秒杀券id
+-- 返回：{0, 序列号}成功；{1}库存不足；{2}重复下单；{3}未开始；{4}已结束；{5}秒杀券不在redis中
+-- 序列号只在下单成功时生成，被拒绝的请求不消耗序列号；lua的数字是double，拼接成64位id由调用方完成
+local info = redis.call('hmget', KEYS[1], 'stock', 'begin', 'end')
+if (info[1] == false) then
+    return {5}
+end
+local now = tonumber(ARGV[2])
+if (now < tonumber(info[2])) then
+    return {3}
+end
+if (now > tonumber(info[3])) then
+    return {4}
+end
+if (tonumber(info[1]) <= 0) then
+    return {1}
+end
+-- sadd返回0说明已经下过单
+if (redis.call('sadd', KEYS[2], ARGV[1]) == 0) then
+    return {2}
+end
+redis.call('hincrby', KEYS[1], 'stock', -1)
+-- 与扣减库存在同一个脚本中写入消息队列，下单成功的订单一定在队列中
+-- 不按长度裁剪（MAXLEN），消费者写入数据库并确认之后才删除消息
+local seq = redis.call('incr', KEYS[4])
+redis.call('xadd', KEYS[3], '*', 'ts', ARGV[3], 'seq', seq, 'userId', ARGV[1], 'voucherId', ARGV[4])
+-- 第一个下单的用户，下单记录与秒杀券同时过期
+if (redis.call('scard', KEYS[2]) == 1) then
+    local ttl = redis.call('pttl', KEYS[1])
+    if (ttl > 0) then
+        redis.call('pexpire', KEYS[2], ttl)
+    end
+end
+return {0, seq}
@@ -0,0 +1,9 @@
+-- 把秒杀券写入redis，已经存在时不覆盖，防止把已经扣减过的库存改回去
+-- KEYS[1]：秒杀券 seckill:stock:{voucherId}
+-- ARGV[1]：库存；ARGV[2]：开始时间；ARGV[3]：结束时间（毫秒）；ARGV[4]：过期时间（毫秒时间戳）
+if (redis.call('exists', KEYS[1]) == 1) then
+    return 0
+end
+redis.call('hmset', KEYS[1], 'stock', ARGV[1], 'begin', ARGV[2], 'end', ARGV[3])
+redis.call('pexpireat', KEYS[1], ARGV[4])
+return 1
@@ -0,0 +1,26 @@
+-- 用数据库校准redis中的秒杀券，redis中不存在时写入
+-- KEYS[1]：秒杀券 seckill:stock:{voucherId}，hash；KEYS[2]：已下单的用户 seckill:order:{voucherId}，set
+-- ARGV[1]：总库存（数据库剩余库存 + 已写入的订单数）；ARGV[2]：数据库剩余库存
+-- ARGV[3]：开始时间；ARGV[4]：结束时间（毫秒）；ARGV[5]：过期时间（毫秒时间戳）
+-- redis中应有的库存 = 总库存 - 已下单的用户数，还在消息队列中的订单已经计入下单用户，但还没有扣减数据库库存
+-- 下单记录丢失（redis数据丢失后重新加载）时已下单的用户数偏小，此时以数据库剩余库存为上限，不会超卖
+-- 返回：{0一致 1新写入 2已修正, 原库存, 校准后的库存}
+local expected = math.min(tonumber(ARGV[1]) - redis.call('scard', KEYS[2]), tonumber(ARGV[2]))
+if (expected < 0) then
+    expected = 0
+end
+local code = 0
+local stock = redis.call('hget', KEYS[1], 'stock')
+if (stock == false) then
+    code = 1
+    stock = -1
+elseif (tonumber(stock) ~= expected) then
+    code = 2
+end
+-- 开始、结束时间和过期时间总是以数据库为准
+redis.call('hmset', KEYS[1], 'stock', expected, 'begin', ARGV[3], 'end', ARGV[4])
+redis.call('pexpireat', KEYS[1], ARGV[5])
+if (redis.call('exists', KEYS[2]) == 1) then
+    redis.call('pexpireat', KEYS[2], ARGV[5])
+end
+return {code, tonumber(stock), expected}
@@ -0,0 +1,19 @@
+-- 释放可重入锁，判断持有者和删除在同一个脚本中执行，保证原子性
+-- KEYS[1]：锁的key；ARGV[1]：持有者标识；ARGV[2]：有效期（毫秒）
+local key = KEYS[1]
+local owner = ARGV[1]
+local releaseTime = ARGV[2]
+-- 不是自己的锁（可能已经过期被别人拿走），不能删除
+if (redis.call('hexists', key, owner) == 0) then
+    return -1
+end
+-- 重入次数-1
+local count = redis.call('hincrby', key, owner, -1)
+if (count > 0) then
+    -- 还没有完全释放，重置有效期
+    redis.call('pexpire', key, releaseTime)
+    return 0
+end
+-- 完全释放，删除锁
+redis.call('del', key)
+return 1
@@ -1,19 +1,312 @@
 package com.xmdp;
 
+import com.xmdp.dto.Result;
+import com.xmdp.dto.UserDTO;
+import com.xmdp.entity.Voucher;
+import com.xmdp.entity.VoucherOrder;
+import com.xmdp.service.ISeckillVoucherService;
+import com.xmdp.service.IVoucherOrderService;
+import com.xmdp.service.IVoucherService;
 import com.xmdp.service.impl.ShopServiceImpl;
+import com.xmdp.utils.ILock;
+import com.xmdp.utils.RedisIdWorker;
+import com.xmdp.utils.RedisLockFactory;
+import com.xmdp.utils.ShopSpatialIndex;
+import com.xmdp.utils.UserHolder;
+import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.geo.Circle;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.core.StringRedisTemplate;
 
 import javax.annotation.Resource;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.xmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.xmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.xmdp.utils.RedisConstants.SHOP_GEO_KEY;
+import static org.junit.jupiter.api.Assertions.*;
+
 @SpringBootTest
 class HmDianPingApplicationTests {
 
     @Resource
     private ShopServiceImpl shopService;
 
+    @Resource
+    private RedisLockFactory redisLockFactory;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private ShopSpatialIndex shopSpatialIndex;
+
+    @Resource
+    private IVoucherService voucherService;
+
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
     @Test
-    void testSaveShop() throws InterruptedException {
+    void testSaveShop() {
         shopService.saveShop2Redis(1L, 10L);
     }
+
+    @Test
+    void testRedisLock() throws InterruptedException {
+        ILock lock = redisLockFactory.getLock("lock:test:1");
+        assertTrue(lock.tryLock());
+        // 同一个线程可以重入
+        assertTrue(lock.tryLock(1, TimeUnit.SECONDS));
+        // 其他线程获取失败
+        assertFalse(tryLockInOtherThread("lock:test:1"));
+        // 重入了两次，释放一次之后仍然持有
+        lock.unlock();
+        assertFalse(tryLockInOtherThread("lock:test:1"));
+        // 完全释放之后其他线程可以获取
+        lock.unlock();
+        assertTrue(tryLockInOtherThread("lock:test:1"));
+    }
+
+    private boolean tryLockInOtherThread(String key) throws InterruptedException {
+        boolean[] locked = new boolean[1];
+        Thread other = new Thread(() -> {
+            ILock lock = redisLockFactory.getLock(key);
+            locked[0] = lock.tryLock();
+            if (locked[0]) {
+                lock.unlock();
+            }
+        });
+        other.start();
+        other.join();
+        return locked[0];
+    }
+
+    /**
+     * id生成：300个线程同时生成，每个id一次INCR与号段模式的吞吐，两种模式下id都不重复
+     */
+    @Test
+    @Tag("benchmark")
+    void testRedisIdWorker() throws InterruptedException {
+        int threads = 300;
+        int perThread = 1000;
+        try {
+            for (int segmentSize : new int[]{1, 1000}) {
+                RedisIdWorker worker = new RedisIdWorker(stringRedisTemplate, segmentSize);
+                Set<Long> ids = ConcurrentHashMap.newKeySet();
+                ExecutorService es = Executors.newFixedThreadPool(threads);
+                CountDownLatch done = new CountDownLatch(threads);
+                long begin = System.nanoTime();
+                for (int i = 0; i < threads; i++) {
+                    es.submit(() -> {
+                        try {
+                            for (int j = 0; j < perThread; j++) {
+                                ids.add(worker.nextId("test"));
+                            }
+                        } finally {
+                            done.countDown();
+                        }
+                    });
+                }
+                done.await();
+                long nanos = System.nanoTime() - begin;
+                es.shutdown();
+                assertEquals(threads * perThread, ids.size());
+                System.out.println("号段大小：" + segmentSize + "，生成" + threads * perThread + "个id，耗时："
+                        + nanos / 1_000_000 + "ms，吞吐：" + threads * perThread * 1_000_000_000L / nanos + "个/秒");
+            }
+        } finally {
+            stringRedisTemplate.delete(stringRedisTemplate.keys("icr:test:*"));
+        }
+    }
+
+    /**
+     * 附近商铺：redis GEORADIUS 与本地空间索引的耗时对比，两者都由启动时的预热导入（xmdp.cache.warm-up.shop-geo）
+     */
+    @Test
+    @Tag("benchmark")
+    void benchmarkNearby() {
+        int rounds = 2000;
+        double[][] points = new double[rounds][];
+        for (int i = 0; i < rounds; i++) {
+            points[i] = new double[]{120.10 + ThreadLocalRandom.current().nextDouble() * 0.1,
+                    30.20 + ThreadLocalRandom.current().nextDouble() * 0.1};
+        }
+        RedisGeoCommands.GeoRadiusCommandArgs args = RedisGeoCommands.GeoRadiusCommandArgs.newGeoRadiusArgs()
+                .includeDistance().sortAscending().limit(10);
+        // 预热连接和JIT
+        for (int i = 0; i < 200; i++) {
+            stringRedisTemplate.opsForGeo().radius(SHOP_GEO_KEY + 1,
+                    new Circle(new Point(points[i][0], points[i][1]), new Distance(5000)), args);
+            shopSpatialIndex.radius(1L, points[i][0], points[i][1], 5000, 10);
+        }
+        long begin = System.nanoTime();
+        for (double[] p : points) {
+            stringRedisTemplate.opsForGeo().radius(SHOP_GEO_KEY + 1,
+                    new Circle(new Point(p[0], p[1]), new Distance(5000)), args);
+        }
+        long redisNanos = System.nanoTime() - begin;
+        begin = System.nanoTime();
+        int sink = 0;
+        for (double[] p : points) {
+            sink += shopSpatialIndex.radius(1L, p[0], p[1], 5000, 10).size();
+        }
+        long localNanos = System.nanoTime() - begin;
+        System.out.println("redis GEORADIUS：" + redisNanos / rounds / 1000 + "us/次，本地空间索引："
+                + localNanos / rounds / 1000 + "us/次，结果数：" + sink);
+    }
+
+    /**
+     * 秒杀压测，使用application.yaml中配置的本地redis和mysql（可以用docker启动一个redis代替线上）
+     * 200个线程、2万个不同的用户抢100张券，每个用户请求两次，
+     * 校验只有100个请求成功、redis中库存为0、数据库中正好写入100个订单
+     * 耗时较长，不在默认测试中执行；seckill.lua的规则由SeckillScriptTests校验
+     */
+    @Test
+    @Tag("benchmark")
+    void loadTestSeckill() throws InterruptedException {
+        int stock = 100;
+        int users = 20000;
+        int threads = 200;
+        // 1.新建一张已经开始的秒杀券
+        LocalDateTime now = LocalDateTime.now();
+        Voucher voucher = new Voucher()
+                .setShopId(1L)
+                .setTitle("秒杀压测")
+                .setPayValue(100L)
+                .setActualValue(1000L)
+                .setType(1)
+                .setStatus(1)
+                .setStock(stock)
+                .setBeginTime(now.minusMinutes(1))
+                .setEndTime(now.plusHours(1));
+        voucherService.addSeckillVoucher(voucher);
+        Long voucherId = voucher.getId();
+        try {
+            // 新增时已经写入redis，第一个请求不需要查询数据库
+            assertEquals(String.valueOf(stock), stringRedisTemplate.opsForHash().get(SECKILL_STOCK_KEY + voucherId, "stock"));
+            // 2.所有线程同时开始，每个用户请求两次，第二次应该被一人一单拦截
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            CountDownLatch start = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(users * 2);
+            AtomicInteger success = new AtomicInteger();
+            for (int i = 0; i < users * 2; i++) {
+                long userId = 1_000_000L + i % users;
+                executor.submit(() -> {
+                    try {
+                        start.await();
+                        UserDTO user = new UserDTO();
+                        user.setId(userId);
+                        UserHolder.saveUser(user);
+                        Result result = voucherOrderService.seckillVoucher(voucherId);
+                        if (result.getSuccess()) {
+                            success.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        UserHolder.removeUser();
+                        done.countDown();
+                    }
+                });
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            done.await();
+            long nanos = System.nanoTime() - begin;
+            executor.shutdown();
+            System.out.println("秒杀请求：" + users * 2 + "次，耗时：" + nanos / 1_000_000 + "ms，吞吐："
+                    + users * 2L * 1_000_000_000 / nanos + "次/秒");
+            // 3.redis中的结果
+            assertEquals(stock, success.get());
+            assertEquals("0", stringRedisTemplate.opsForHash().get(SECKILL_STOCK_KEY + voucherId, "stock"));
+            assertEquals(Long.valueOf(stock), stringRedisTemplate.opsForSet().size(SECKILL_ORDER_KEY + voucherId));
+            // 4.等待订单异步写入数据库
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (voucherOrderService.query().eq("voucher_id", voucherId).count() < stock
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            assertEquals(stock, voucherOrderService.query().eq("voucher_id", voucherId).count().intValue());
+            assertEquals(0, seckillVoucherService.getById(voucherId).getStock().intValue());
+        } finally {
+            voucherOrderService.update().eq("voucher_id", voucherId).remove();
+            seckillVoucherService.removeById(voucherId);
+            voucherService.removeById(voucherId);
+            stringRedisTemplate.delete(Arrays.asList(SECKILL_STOCK_KEY + voucherId, SECKILL_ORDER_KEY + voucherId));
+        }
+    }
+
+    /**
+     * 订单写入数据库：不同批量大小的吞吐和每批耗时，批量为1时是逐条save()
+     * 每种批量写入5000个订单，每批一个事务、一次扣减库存、一条多行insert
+     */
+    @Test
+    @Tag("benchmark")
+    void benchmarkVoucherOrderBatchInsert() {
+        int total = 5000;
+        int[] batchSizes = {1, 10, 50, 100, 500};
+        LocalDateTime now = LocalDateTime.now();
+        Voucher voucher = new Voucher()
+                .setShopId(1L)
+                .setTitle("批量写入压测")
+                .setPayValue(100L)
+                .setActualValue(1000L)
+                .setType(1)
+                .setStatus(1)
+                .setStock(total * batchSizes.length)
+                .setBeginTime(now.minusMinutes(1))
+                .setEndTime(now.plusHours(1));
+        voucherService.addSeckillVoucher(voucher);
+        Long voucherId = voucher.getId();
+        long orderId = System.currentTimeMillis() * 1000;
+        long userId = 2_000_000L;
+        try {
+            for (int batchSize : batchSizes) {
+                long maxNanos = 0;
+                long begin = System.nanoTime();
+                for (int i = 0; i < total; i += batchSize) {
+                    List<VoucherOrder> batch = new ArrayList<>(batchSize);
+                    for (int j = 0; j < batchSize && i + j < total; j++) {
+                        batch.add(new VoucherOrder().setId(orderId++).setUserId(userId++).setVoucherId(voucherId));
+                    }
+                    long batchBegin = System.nanoTime();
+                    boolean success = batchSize == 1
+                            ? voucherOrderService.createVoucherOrder(batch.get(0))
+                            : voucherOrderService.createVoucherOrders(batch);
+                    maxNanos = Math.max(maxNanos, System.nanoTime() - batchBegin);
+                    assertTrue(success);
+                }
+                long nanos = System.nanoTime() - begin;
+                int batches = (total + batchSize - 1) / batchSize;
+                System.out.println("批量：" + batchSize + "，吞吐：" + total * 1_000_000_000L / nanos + "单/秒，每批平均："
+                        + nanos / batches / 1000 + "us，最长：" + maxNanos / 1000 + "us");
+            }
+            assertEquals(total * batchSizes.length, voucherOrderService.query().eq("voucher_id", voucherId).count().intValue());
+            assertEquals(0, seckillVoucherService.getById(voucherId).getStock().intValue());
+        } finally {
+            voucherOrderService.update().eq("voucher_id", voucherId).remove();
+            seckillVoucherService.removeById(voucherId);
+            voucherService.removeById(voucherId);
+        }
+    }
 }
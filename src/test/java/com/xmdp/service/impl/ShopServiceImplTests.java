@@ -0,0 +1,93 @@
+package com.xmdp.service.impl;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.xmdp.dto.Result;
+import com.xmdp.entity.Shop;
+import com.xmdp.utils.BloomFilter;
+import com.xmdp.utils.LocalCache;
+import com.xmdp.utils.ShopSpatialIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.geo.Circle;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResult;
+import org.springframework.data.geo.GeoResults;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.core.GeoOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.List;
+
+import static com.xmdp.utils.RedisConstants.SHOP_GEO_KEY;
+import static com.xmdp.utils.SystemConstants.DEFAULT_PAGE_SIZE;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 附近商铺的分页参数，店铺从本地缓存读取，不需要redis和数据库
+ */
+class ShopServiceImplTests {
+
+    private static final double X = 120.15;
+    private static final double Y = 30.28;
+
+    private ShopServiceImpl shopService;
+
+    @BeforeEach
+    void setUp() {
+        shopService = new ShopServiceImpl();
+        BloomFilter bloomFilter = new BloomFilter(100, 0.01);
+        bloomFilter.put(1L);
+        LocalCache<Long, Shop> localCache = new LocalCache<>(Caffeine.newBuilder().<Long, Shop>build());
+        localCache.put(1L, new Shop().setId(1L).setTypeId(1L).setX(X).setY(Y), localCache.mark());
+        ShopSpatialIndex spatialIndex = new ShopSpatialIndex(0.01);
+        spatialIndex.put(1L, 1L, X, Y);
+        ReflectionTestUtils.setField(shopService, "shopBloomFilter", bloomFilter);
+        ReflectionTestUtils.setField(shopService, "shopLocalCache", localCache);
+        ReflectionTestUtils.setField(shopService, "shopSpatialIndex", spatialIndex);
+    }
+
+    /**
+     * 页码小于1时按第一页处理，不会因为负数的分页参数抛出异常
+     */
+    @Test
+    void testQueryShopByTypeLocalFirstPage() {
+        ReflectionTestUtils.setField(shopService, "geoEngine", "local");
+        for (Integer current : new Integer[]{0, -1, 1}) {
+            Result result = shopService.queryShopByType(1, current, X, Y);
+            assertTrue(result.getSuccess());
+            assertEquals(1, ((List<?>) result.getData()).size(), "current=" + current);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testQueryShopByTypeRedisFirstPage() {
+        StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+        GeoOperations<String, String> geoOperations = mock(GeoOperations.class);
+        when(stringRedisTemplate.opsForGeo()).thenReturn(geoOperations);
+        when(geoOperations.radius(eq(SHOP_GEO_KEY + 1), any(Circle.class),
+                any(RedisGeoCommands.GeoRadiusCommandArgs.class)))
+                .thenReturn(new GeoResults<>(Collections.singletonList(new GeoResult<>(
+                        new RedisGeoCommands.GeoLocation<>("1", new Point(X, Y)), new Distance(0)))));
+        ReflectionTestUtils.setField(shopService, "geoEngine", "redis");
+        ReflectionTestUtils.setField(shopService, "stringRedisTemplate", stringRedisTemplate);
+
+        Result result = shopService.queryShopByType(1, 0, X, Y);
+        assertTrue(result.getSuccess());
+        assertEquals(1, ((List<?>) result.getData()).size());
+        // 按第一页查询，COUNT为一页的数量
+        ArgumentCaptor<RedisGeoCommands.GeoRadiusCommandArgs> args =
+                ArgumentCaptor.forClass(RedisGeoCommands.GeoRadiusCommandArgs.class);
+        verify(geoOperations).radius(eq(SHOP_GEO_KEY + 1), any(Circle.class), args.capture());
+        assertEquals(Long.valueOf(DEFAULT_PAGE_SIZE), args.getValue().getLimit());
+    }
+}
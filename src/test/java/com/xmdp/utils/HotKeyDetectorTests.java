@@ -0,0 +1,55 @@
+package com.xmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HotKeyDetectorTests {
+
+    @Test
+    void testHotKeyAboveThreshold() {
+        HotKeyDetector detector = new HotKeyDetector(10, 10, 2048, 100, 3);
+        // 1个热点key访问500次，1000个普通key各访问5次
+        for (int i = 0; i < 500; i++) {
+            detector.record(1L);
+        }
+        for (long id = 100; id < 1100; id++) {
+            for (int i = 0; i < 5; i++) {
+                detector.record(id);
+            }
+        }
+        assertTrue(detector.isHot(1L));
+        assertFalse(detector.isHot(100L));
+        Map<Long, Long> topK = detector.topK();
+        assertEquals(1, topK.size());
+        // count-min sketch只会多估，不会少估
+        assertTrue(topK.get(1L) >= 500);
+    }
+
+    @Test
+    void testTopKOrder() {
+        HotKeyDetector detector = new HotKeyDetector(10, 10, 2048, 10, 2);
+        for (long id = 1; id <= 3; id++) {
+            for (int i = 0; i < id * 100; i++) {
+                detector.record(id);
+            }
+        }
+        Map<Long, Long> topK = detector.topK();
+        assertArrayEquals(new Long[]{3L, 2L}, topK.keySet().toArray(new Long[0]));
+    }
+
+    @Test
+    void testWindowExpires() throws InterruptedException {
+        // 1秒的窗口，过了窗口之后计数清零
+        HotKeyDetector detector = new HotKeyDetector(1, 4, 256, 50, 10);
+        for (int i = 0; i < 100; i++) {
+            detector.record(7L);
+        }
+        assertTrue(detector.isHot(7L));
+        Thread.sleep(1100);
+        assertFalse(detector.isHot(7L));
+        assertTrue(detector.topK().isEmpty());
+    }
+}
@@ -0,0 +1,196 @@
+package com.xmdp.utils;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedisIdWorkerTests {
+
+    private static final ZoneId ZONE = ZoneId.of("Asia/Shanghai");
+
+    /**
+     * 两个节点共用同一个计数器，每个节点多个线程同时生成，id不重复
+     */
+    @Test
+    void testUniqueUnderConcurrency() throws InterruptedException {
+        for (int segmentSize : new int[]{1, 100}) {
+            MemorySequence sequence = new MemorySequence(0);
+            RedisIdWorker node1 = new RedisIdWorker(sequence, segmentSize, Clock.system(ZONE));
+            RedisIdWorker node2 = new RedisIdWorker(sequence, segmentSize, Clock.system(ZONE));
+            int threads = 16;
+            int perThread = 20000;
+            Set<Long> ids = ConcurrentHashMap.newKeySet();
+            ExecutorService es = Executors.newFixedThreadPool(threads);
+            CountDownLatch start = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(threads);
+            for (int i = 0; i < threads; i++) {
+                RedisIdWorker worker = i % 2 == 0 ? node1 : node2;
+                es.submit(() -> {
+                    try {
+                        start.await();
+                        for (int j = 0; j < perThread; j++) {
+                            ids.add(worker.nextId("order"));
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            start.countDown();
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+            es.shutdown();
+            assertEquals(threads * perThread, ids.size(), "segmentSize=" + segmentSize);
+        }
+    }
+
+    @Test
+    void testSegmentFetchesOncePerSegment() {
+        MemorySequence sequence = new MemorySequence(0);
+        RedisIdWorker worker = new RedisIdWorker(sequence, 100, Clock.system(ZONE));
+        long last = 0;
+        for (int i = 0; i < 1000; i++) {
+            long id = worker.nextId("order");
+            // 单线程内递增
+            assertTrue(id > last);
+            last = id;
+        }
+        assertEquals(10, sequence.calls.get());
+        // 不同业务的号段互相独立
+        worker.nextId("blog");
+        assertEquals(11, sequence.calls.get());
+    }
+
+    /**
+     * 跨天后不再使用前一天剩下的号段，序列号从新一天的计数器重新开始
+     */
+    @Test
+    void testDayRollover() {
+        MemorySequence sequence = new MemorySequence(0);
+        MutableClock clock = new MutableClock(LocalDateTime.of(2022, 6, 1, 23, 59, 59).atZone(ZONE).toInstant());
+        RedisIdWorker worker = new RedisIdWorker(sequence, 100, clock);
+        long first = worker.nextId("order");
+        long second = worker.nextId("order");
+        assertEquals(1, first & 0xFFFFFFFFL);
+        assertEquals(2, second & 0xFFFFFFFFL);
+        clock.instant = clock.instant.plusSeconds(1);
+        long third = worker.nextId("order");
+        assertEquals(1, third & 0xFFFFFFFFL);
+        assertTrue(third > second);
+        assertEquals(100, sequence.values.get("icr:order:2022:06:01").get());
+        assertEquals(100, sequence.values.get("icr:order:2022:06:02").get());
+    }
+
+    /**
+     * ticket与nextId使用同一天的同一个计数器，脚本INCR得到的序列号拼接出的id与nextId不重复
+     */
+    @Test
+    void testTicketSharesSequence() {
+        MemorySequence sequence = new MemorySequence(0);
+        MutableClock clock = new MutableClock(LocalDateTime.of(2022, 6, 1, 12, 0, 0).atZone(ZONE).toInstant());
+        RedisIdWorker worker = new RedisIdWorker(sequence, 1, clock);
+        long first = worker.nextId("order");
+        RedisIdWorker.Ticket ticket = worker.ticket("order");
+        assertEquals("icr:order:2022:06:01", ticket.getKey());
+        long second = ticket.toId(sequence.incrBy(ticket.getKey(), 1));
+        assertEquals(first + 1, second);
+        assertEquals(second + 1, worker.nextId("order"));
+        assertThrows(IllegalStateException.class, () -> RedisIdWorker.toId(ticket.getTimestamp(), 1L << 32));
+    }
+
+    /**
+     * 模拟每次访问redis 50us的往返，对比每个id一次INCR与号段模式的吞吐
+     */
+    @Test
+    @Tag("benchmark")
+    void benchmark() throws InterruptedException {
+        int threads = 8;
+        int perThread = 2000;
+        for (int segmentSize : new int[]{1, 100, 1000}) {
+            MemorySequence sequence = new MemorySequence(50_000);
+            RedisIdWorker worker = new RedisIdWorker(sequence, segmentSize, Clock.system(ZONE));
+            List<Thread> workers = new ArrayList<>();
+            AtomicInteger sink = new AtomicInteger();
+            for (int i = 0; i < threads; i++) {
+                workers.add(new Thread(() -> {
+                    for (int j = 0; j < perThread; j++) {
+                        if (worker.nextId("order") > 0) {
+                            sink.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            long begin = System.nanoTime();
+            workers.forEach(Thread::start);
+            for (Thread t : workers) {
+                t.join();
+            }
+            long nanos = System.nanoTime() - begin;
+            assertEquals(threads * perThread, sink.get());
+            System.out.println("号段大小：" + segmentSize + "，吞吐：" + threads * perThread * 1_000_000_000L / nanos
+                    + "个/秒，访问redis：" + sequence.calls.get() + "次");
+        }
+    }
+
+    // 内存中的计数器，可以模拟redis的往返延迟
+    private static class MemorySequence implements RedisIdWorker.Sequence {
+        private final Map<String, AtomicLong> values = new ConcurrentHashMap<>();
+        private final AtomicInteger calls = new AtomicInteger();
+        private final long latencyNanos;
+
+        MemorySequence(long latencyNanos) {
+            this.latencyNanos = latencyNanos;
+        }
+
+        @Override
+        public long incrBy(String key, long delta) {
+            calls.incrementAndGet();
+            if (latencyNanos > 0) {
+                LockSupport.parkNanos(latencyNanos);
+            }
+            return values.computeIfAbsent(key, k -> new AtomicLong()).addAndGet(delta);
+        }
+    }
+
+    private static class MutableClock extends Clock {
+        private volatile Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZONE;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
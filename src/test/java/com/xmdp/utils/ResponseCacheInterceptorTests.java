@@ -0,0 +1,38 @@
+package com.xmdp.utils;
+
+import com.xmdp.dto.CachedBody;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCacheInterceptorTests {
+
+    /**
+     * 响应缓存命中的请求不经过service，热点key仍然要被统计出来
+     */
+    @Test
+    void testHitsAreReportedAsHot() throws Exception {
+        ResponseCache responseCache = new ResponseCache().route("/shop/\\d+", 100, 60);
+        HotKeyDetector detector = new HotKeyDetector(10, 10, 2048, 200, 20);
+        ResponseCacheInterceptor interceptor =
+                new ResponseCacheInterceptor(responseCache, detector.pathRecorder("/shop/"));
+        // 1.第一次请求没有命中，放行给controller，由controller中的service统计，这里不统计
+        assertTrue(interceptor.preHandle(new MockHttpServletRequest("GET", "/shop/1"),
+                new MockHttpServletResponse(), null));
+        assertFalse(detector.isHot(1L));
+        responseCache.put("/shop/1", new CachedBody(1, "{\"id\":1}".getBytes(StandardCharsets.UTF_8)),
+                responseCache.mark());
+        // 2.之后的请求都由拦截器直接返回
+        for (int i = 0; i < 300; i++) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            assertFalse(interceptor.preHandle(new MockHttpServletRequest("GET", "/shop/1"), response, null));
+            assertEquals("{\"id\":1}", response.getContentAsString());
+        }
+        assertTrue(detector.isHot(1L));
+        assertTrue(detector.topK().containsKey(1L));
+    }
+}
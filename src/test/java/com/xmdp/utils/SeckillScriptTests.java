@@ -0,0 +1,135 @@
+package com.xmdp.utils;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.xmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.xmdp.utils.RedisConstants.SECKILL_ORDER_STREAM;
+import static com.xmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * seckill.lua的下单规则：时间窗口、库存、一人一单，序列号只在下单成功时消耗
+ * 在docker启动的redis中执行，没有docker时跳过
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class SeckillScriptTests {
+
+    private static final long VOUCHER_ID = 1;
+    private static final String SEQUENCE_KEY = "icr:order:2022:06:01";
+    private static final long TIMESTAMP = 12345;
+
+    @Container
+    private static final GenericContainer<?> REDIS =
+            new GenericContainer<>(DockerImageName.parse("redis:6.2-alpine")).withExposedPorts(6379);
+
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> SECKILL_SCRIPT = new DefaultRedisScript<>();
+    private static final DefaultRedisScript<Long> SECKILL_LOAD_SCRIPT = new DefaultRedisScript<>();
+
+    static {
+        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
+        SECKILL_SCRIPT.setResultType(List.class);
+        SECKILL_LOAD_SCRIPT.setLocation(new ClassPathResource("seckill_load.lua"));
+        SECKILL_LOAD_SCRIPT.setResultType(Long.class);
+    }
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate stringRedisTemplate;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(REDIS.getHost(), REDIS.getMappedPort(6379)));
+        connectionFactory.afterPropertiesSet();
+        stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void close() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void flush() {
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.flushDb();
+            return null;
+        });
+    }
+
+    @Test
+    void testNotLoaded() {
+        assertEquals(Collections.singletonList(5L), seckill(1, System.currentTimeMillis()));
+        assertNull(stringRedisTemplate.opsForValue().get(SEQUENCE_KEY));
+    }
+
+    @Test
+    void testSaleWindow() {
+        long now = System.currentTimeMillis();
+        load(10, now, now + 60_000);
+        assertEquals(Collections.singletonList(3L), seckill(1, now - 1));
+        assertEquals(Collections.singletonList(4L), seckill(1, now + 60_001));
+        // 被拒绝的请求不扣库存、不记录用户、不消耗序列号、不写消息队列
+        assertEquals("10", stringRedisTemplate.opsForHash().get(SECKILL_STOCK_KEY + VOUCHER_ID, "stock"));
+        assertEquals(Boolean.FALSE, stringRedisTemplate.hasKey(SECKILL_ORDER_KEY + VOUCHER_ID));
+        assertNull(stringRedisTemplate.opsForValue().get(SEQUENCE_KEY));
+        assertEquals(Boolean.FALSE, stringRedisTemplate.hasKey(SECKILL_ORDER_STREAM));
+    }
+
+    @Test
+    void testStockAndOnePerUser() {
+        long now = System.currentTimeMillis();
+        load(2, now - 1000, now + 60_000);
+        assertEquals(Arrays.asList(0L, 1L), seckill(1, now));
+        // 重复下单
+        assertEquals(Collections.singletonList(2L), seckill(1, now));
+        assertEquals(Arrays.asList(0L, 2L), seckill(2, now));
+        // 库存不足
+        assertEquals(Collections.singletonList(1L), seckill(3, now));
+        // 只有成功的两单消耗了序列号
+        assertEquals("2", stringRedisTemplate.opsForValue().get(SEQUENCE_KEY));
+        assertEquals("0", stringRedisTemplate.opsForHash().get(SECKILL_STOCK_KEY + VOUCHER_ID, "stock"));
+        assertEquals(2L, stringRedisTemplate.opsForSet().size(SECKILL_ORDER_KEY + VOUCHER_ID));
+        // 消息中的时间戳和序列号能拼出调用方返回给用户的订单id
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                .range(SECKILL_ORDER_STREAM, Range.unbounded());
+        assertEquals(2, records.size());
+        MapRecord<String, Object, Object> first = records.get(0);
+        assertEquals(String.valueOf(TIMESTAMP), first.getValue().get("ts"));
+        assertEquals("1", first.getValue().get("seq"));
+        assertEquals("1", first.getValue().get("userId"));
+        assertEquals(String.valueOf(VOUCHER_ID), first.getValue().get("voucherId"));
+    }
+
+    private void load(int stock, long begin, long end) {
+        assertEquals(1L, stringRedisTemplate.execute(SECKILL_LOAD_SCRIPT,
+                Collections.singletonList(SECKILL_STOCK_KEY + VOUCHER_ID),
+                String.valueOf(stock), String.valueOf(begin), String.valueOf(end), String.valueOf(end + 60_000)));
+    }
+
+    private List<?> seckill(long userId, long now) {
+        return stringRedisTemplate.execute(SECKILL_SCRIPT,
+                Arrays.asList(SECKILL_STOCK_KEY + VOUCHER_ID, SECKILL_ORDER_KEY + VOUCHER_ID, SECKILL_ORDER_STREAM,
+                        SEQUENCE_KEY),
+                String.valueOf(userId), String.valueOf(now), String.valueOf(TIMESTAMP), String.valueOf(VOUCHER_ID));
+    }
+}
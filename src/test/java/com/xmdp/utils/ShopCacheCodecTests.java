@@ -0,0 +1,105 @@
+package com.xmdp.utils;
+
+import com.xmdp.entity.Shop;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShopCacheCodecTests {
+
+    private final JsonCacheCodec<Shop> jsonCodec = new JsonCacheCodec<>(Shop.class);
+
+    private Shop newShop() {
+        return new Shop()
+                .setId(1L)
+                .setName("103茶餐厅")
+                .setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz.jpg")
+                .setArea("大关")
+                .setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192)
+                .setY(30.316078)
+                .setAvgPrice(80L)
+                .setSold(4215)
+                .setComments(3035)
+                .setScore(37)
+                .setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+    }
+
+    @Test
+    void testRoundTrip() {
+        Shop shop = newShop();
+        long expireMillis = System.currentTimeMillis() + 20000;
+        RedisData redisData = ShopCacheCodec.INSTANCE.decode(ShopCacheCodec.INSTANCE.encode(shop, expireMillis));
+        assertEquals(shop, redisData.getData());
+        assertNotNull(redisData.getExpireTime());
+    }
+
+    @Test
+    void testNullFields() {
+        Shop shop = new Shop().setId(2L).setName("只有名字");
+        RedisData redisData = ShopCacheCodec.INSTANCE.decode(ShopCacheCodec.INSTANCE.encode(shop, 0L));
+        assertEquals(shop, redisData.getData());
+    }
+
+    @Test
+    void testReadLegacyJson() {
+        // 上线前写入的JSON格式数据仍然可以读取
+        Shop shop = newShop();
+        byte[] json = jsonCodec.encode(shop, System.currentTimeMillis());
+        assertEquals('{', (char) json[0]);
+        RedisData redisData = ShopCacheCodec.INSTANCE.decode(json);
+        assertEquals(shop.getName(), ((Shop) redisData.getData()).getName());
+    }
+
+    @Test
+    void testUnknownVersionIsMiss() {
+        byte[] bytes = ShopCacheCodec.INSTANCE.encode(newShop(), 0L);
+        bytes[1] = 99;
+        assertNull(ShopCacheCodec.INSTANCE.decode(bytes));
+    }
+
+    /**
+     * 对比JSON和二进制两种格式的编解码耗时与体积，结果输出到控制台
+     */
+    @Test
+    @Tag("benchmark")
+    void benchmark() {
+        Shop shop = newShop();
+        long expireMillis = System.currentTimeMillis();
+        byte[] jsonBytes = jsonCodec.encode(shop, expireMillis);
+        byte[] binaryBytes = ShopCacheCodec.INSTANCE.encode(shop, expireMillis);
+        System.out.println("JSON大小：" + jsonBytes.length + "字节，二进制大小：" + binaryBytes.length + "字节");
+        System.out.println("JSON内容：" + new String(jsonBytes, StandardCharsets.UTF_8));
+
+        int warmup = 20000;
+        int rounds = 200000;
+        // 预热，让JIT完成编译
+        run(jsonCodec, shop, warmup);
+        run(ShopCacheCodec.INSTANCE, shop, warmup);
+
+        long jsonNanos = run(jsonCodec, shop, rounds);
+        long binaryNanos = run(ShopCacheCodec.INSTANCE, shop, rounds);
+        System.out.println("JSON编码+解码：" + jsonNanos / rounds + "ns/次");
+        System.out.println("二进制编码+解码：" + binaryNanos / rounds + "ns/次");
+    }
+
+    private long run(CacheCodec<Shop> codec, Shop shop, int rounds) {
+        long begin = System.nanoTime();
+        int sink = 0;
+        for (int i = 0; i < rounds; i++) {
+            RedisData redisData = codec.decode(codec.encode(shop, i));
+            sink += ((Shop) redisData.getData()).getSold();
+        }
+        long cost = System.nanoTime() - begin;
+        // 防止循环被JIT优化掉
+        assertTrue(sink > 0);
+        return cost;
+    }
+}
@@ -0,0 +1,64 @@
+package com.xmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShopNameIndexTests {
+
+    private ShopNameIndex newIndex() {
+        Map<Long, String> names = new HashMap<>();
+        names.put(1L, "103茶餐厅");
+        names.put(2L, "蔡馬洪涛烤肉·老北京铜锅涮羊肉");
+        names.put(3L, "新白鹿餐厅(运河上街店)");
+        names.put(4L, "Mamala(杭州远洋乐堤港店)");
+        names.put(5L, "海底捞火锅(水晶城购物中心店)");
+        names.put(6L, "幸福里老北京涮锅（丝联店）");
+        names.put(7L, "餐厅");
+        ShopNameIndex index = new ShopNameIndex();
+        index.rebuild(names);
+        return index;
+    }
+
+    @Test
+    void testRanking() {
+        ShopNameIndex index = newIndex();
+        // 前缀匹配最靠前，其余包含关键字的按名称长度排序
+        assertEquals(Arrays.asList(7L, 1L, 3L), index.search("餐厅", 0, 10));
+        // 单个字
+        assertEquals(Arrays.asList(7L, 1L, 3L), index.search("餐", 0, 10));
+        // 要包含关键字的所有bigram：2号店有老北、北京，但没有京涮
+        assertEquals(Arrays.asList(6L), index.search("老北京涮", 0, 10));
+        // 包含所有bigram但不连续的排在最后：厅餐/餐厅
+        index.put(9L, "餐厅·厅餐");
+        assertEquals(Arrays.asList(9L), index.search("厅餐厅", 0, 10));
+        // 英文不区分大小写，忽略空格
+        assertEquals(Arrays.asList(4L), index.search(" mama ", 0, 10));
+        assertTrue(index.search("不存在", 0, 10).isEmpty());
+    }
+
+    @Test
+    void testPaging() {
+        ShopNameIndex index = newIndex();
+        assertEquals(Arrays.asList(7L, 1L), index.search("餐厅", 0, 2));
+        assertEquals(Arrays.asList(3L), index.search("餐厅", 2, 2));
+        assertTrue(index.search("餐厅", 4, 2).isEmpty());
+        // 负数的offset按0处理
+        assertEquals(Arrays.asList(7L, 1L), index.search("餐厅", -10, 2));
+    }
+
+    @Test
+    void testIncrementalUpdate() {
+        ShopNameIndex index = newIndex();
+        index.put(7L, "小餐馆");
+        assertEquals(Arrays.asList(1L, 3L), index.search("餐厅", 0, 10));
+        assertEquals(Arrays.asList(7L), index.search("餐馆", 0, 10));
+        index.put(8L, "餐厅二号");
+        assertEquals(Arrays.asList(8L, 1L, 3L), index.search("餐厅", 0, 10));
+        assertEquals(8, index.size());
+    }
+}
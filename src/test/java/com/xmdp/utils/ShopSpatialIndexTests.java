@@ -0,0 +1,141 @@
+package com.xmdp.utils;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShopSpatialIndexTests {
+
+    // 杭州附近，与hmdp.sql中的店铺坐标在同一片区域
+    private static final double CENTER_X = 120.15;
+    private static final double CENTER_Y = 30.28;
+
+    @Test
+    void testRadiusMatchesBruteForce() {
+        double[][] points = randomPoints(5000, 0.2, 1);
+        ShopSpatialIndex index = newIndex(points);
+        Random random = new Random(2);
+        for (int q = 0; q < 200; q++) {
+            double x = CENTER_X + (random.nextDouble() - 0.5) * 0.2;
+            double y = CENTER_Y + (random.nextDouble() - 0.5) * 0.2;
+            Long[] expected = bruteForce(points, x, y, 5000, Integer.MAX_VALUE);
+            ShopSpatialIndex.Hits hits = index.radius(1L, x, y, 5000, Integer.MAX_VALUE);
+            assertArrayEquals(expected, ids(hits));
+            for (int i = 1; i < hits.size(); i++) {
+                assertTrue(hits.getDistance(i - 1) <= hits.getDistance(i));
+            }
+        }
+    }
+
+    @Test
+    void testNearestMatchesBruteForce() {
+        double[][] points = randomPoints(5000, 0.2, 3);
+        ShopSpatialIndex index = newIndex(points);
+        Random random = new Random(4);
+        for (int q = 0; q < 200; q++) {
+            // 包含网格外面的查询点
+            double x = CENTER_X + (random.nextDouble() - 0.5) * 0.4;
+            double y = CENTER_Y + (random.nextDouble() - 0.5) * 0.4;
+            int k = 1 + random.nextInt(20);
+            assertArrayEquals(bruteForce(points, x, y, Double.MAX_VALUE, k), ids(index.nearest(1L, x, y, k)));
+        }
+    }
+
+    @Test
+    void testIncrementalUpdate() {
+        ShopSpatialIndex index = new ShopSpatialIndex(0.01);
+        index.put(1L, 1L, CENTER_X, CENTER_Y);
+        index.put(2L, 1L, CENTER_X + 0.001, CENTER_Y);
+        index.put(3L, 2L, CENTER_X, CENTER_Y);
+        assertArrayEquals(new Long[]{1L, 2L}, ids(index.radius(1L, CENTER_X, CENTER_Y, 1000, 10)));
+        // 移动到很远的地方
+        index.put(1L, 1L, CENTER_X + 1, CENTER_Y);
+        assertArrayEquals(new Long[]{2L}, ids(index.radius(1L, CENTER_X, CENTER_Y, 1000, 10)));
+        // 修改类型
+        index.put(2L, 2L, CENTER_X + 0.001, CENTER_Y);
+        assertArrayEquals(new Long[]{3L, 2L}, ids(index.radius(2L, CENTER_X, CENTER_Y, 1000, 10)));
+        assertEquals(0, index.radius(1L, CENTER_X, CENTER_Y, 1000, 10).size());
+        // 移除
+        index.remove(3L);
+        assertArrayEquals(new Long[]{2L}, ids(index.radius(2L, CENTER_X, CENTER_Y, 1000, 10)));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void testDistance() {
+        // 同一经线上相差1度纬度，距离为 R·π/180
+        assertEquals(6372797.560856 * Math.PI / 180, ShopSpatialIndex.distance(120, 30, 120, 31), 1e-6);
+        assertEquals(0, ShopSpatialIndex.distance(CENTER_X, CENTER_Y, CENTER_X, CENTER_Y), 1e-9);
+    }
+
+    /**
+     * 10万个店铺，查询5公里内前10个（与/shop/of/type第2页相同的参数）
+     * redis GEORADIUS的对比见HmDianPingApplicationTests.benchmarkNearby，需要真实的redis
+     */
+    @Test
+    @Tag("benchmark")
+    void benchmark() {
+        double[][] points = randomPoints(100000, 0.5, 5);
+        ShopSpatialIndex index = newIndex(points);
+        Random random = new Random(6);
+        int warmup = 20000;
+        int rounds = 100000;
+        int sink = 0;
+        for (int i = 0; i < warmup; i++) {
+            sink += index.radius(1L, CENTER_X + random.nextDouble() * 0.1, CENTER_Y, 5000, 10).size();
+        }
+        long begin = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            sink += index.radius(1L, CENTER_X + random.nextDouble() * 0.1, CENTER_Y, 5000, 10).size();
+        }
+        long radiusNanos = System.nanoTime() - begin;
+        begin = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            sink += index.nearest(1L, CENTER_X + random.nextDouble() * 0.1, CENTER_Y, 10).size();
+        }
+        long nearestNanos = System.nanoTime() - begin;
+        assertTrue(sink > 0);
+        System.out.println("半径查询：" + radiusNanos / rounds + "ns/次，k近邻查询：" + nearestNanos / rounds + "ns/次");
+    }
+
+    private static double[][] randomPoints(int n, double span, long seed) {
+        Random random = new Random(seed);
+        double[][] points = new double[n][];
+        for (int i = 0; i < n; i++) {
+            points[i] = new double[]{CENTER_X + (random.nextDouble() - 0.5) * span,
+                    CENTER_Y + (random.nextDouble() - 0.5) * span};
+        }
+        return points;
+    }
+
+    private static ShopSpatialIndex newIndex(double[][] points) {
+        ShopSpatialIndex index = new ShopSpatialIndex(0.01);
+        for (int i = 0; i < points.length; i++) {
+            index.put(i, 1L, points[i][0], points[i][1]);
+        }
+        return index;
+    }
+
+    private static Long[] bruteForce(double[][] points, double x, double y, double radius, int limit) {
+        return java.util.stream.IntStream.range(0, points.length)
+                .boxed()
+                .filter(i -> ShopSpatialIndex.distance(x, y, points[i][0], points[i][1]) <= radius)
+                .sorted(Comparator.comparingDouble(i -> ShopSpatialIndex.distance(x, y, points[i][0], points[i][1])))
+                .limit(limit)
+                .map(Integer::longValue)
+                .toArray(Long[]::new);
+    }
+
+    private static Long[] ids(ShopSpatialIndex.Hits hits) {
+        Long[] ids = new Long[hits.size()];
+        for (int i = 0; i < hits.size(); i++) {
+            ids[i] = hits.getId(i);
+        }
+        return ids;
+    }
+}
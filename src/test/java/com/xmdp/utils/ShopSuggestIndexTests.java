@@ -0,0 +1,134 @@
+package com.xmdp.utils;
+
+import com.xmdp.dto.ShopSuggestion;
+import com.xmdp.entity.Shop;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShopSuggestIndexTests {
+
+    private static Shop shop(long id, String name, String area, int sold, int score) {
+        return new Shop().setId(id).setName(name).setArea(area).setSold(sold).setScore(score);
+    }
+
+    @Test
+    void testSuggest() {
+        ShopSuggestIndex index = new ShopSuggestIndex();
+        index.rebuild(Arrays.asList(
+                shop(1L, "103茶餐厅", "大关", 4215, 37),
+                shop(2L, "蔡馬洪涛烤肉·老北京铜锅涮羊肉", "拱宸桥/上塘", 2160, 46),
+                shop(3L, "新白鹿餐厅(运河上街店)", "运河上街", 12035, 47),
+                shop(4L, "Mamala(杭州远洋乐堤港店)", "拱宸桥/上塘", 12815, 49),
+                shop(5L, "海底捞火锅(水晶城购物中心店)", "大关", 18000, 50),
+                shop(6L, "幸福里老北京涮锅（丝联店）", "拱宸桥/上塘", 2487, 47),
+                shop(7L, "新白鹿餐厅(拱墅万达广场店)", "北部新城", 9529, 44)));
+        // 同一个前缀按热度倒序
+        assertEquals(Arrays.asList(3L, 7L), ids(index.suggest("新白鹿", 10)));
+        // 商圈的热度是所属店铺之和，2、4、6都在拱宸桥/上塘
+        List<ShopSuggestion> area = index.suggest("拱", 10);
+        assertEquals(1, area.size());
+        assertEquals(ShopSuggestion.TYPE_AREA, area.get(0).getType());
+        assertEquals("拱宸桥/上塘", area.get(0).getText());
+        // 英文不区分大小写，忽略空格
+        assertEquals(Arrays.asList(4L), ids(index.suggest(" MAMA ", 10)));
+        // 数量限制
+        assertEquals(Arrays.asList(3L), ids(index.suggest("新", 1)));
+        assertTrue(index.suggest("不存在", 10).isEmpty());
+        assertTrue(index.suggest("", 10).isEmpty());
+    }
+
+    /**
+     * 与逐个比较的结果一致
+     */
+    @Test
+    void testSameAsBruteForce() {
+        List<Shop> shops = randomShops(20000, 1);
+        ShopSuggestIndex index = new ShopSuggestIndex();
+        index.rebuild(shops);
+        Random random = new Random(2);
+        for (int i = 0; i < 2000; i++) {
+            Shop sample = shops.get(random.nextInt(shops.size()));
+            String prefix = sample.getName().substring(0, 1 + random.nextInt(3));
+            List<String> expected = shops.stream()
+                    .filter(shop -> shop.getName().startsWith(prefix))
+                    .sorted((a, b) -> {
+                        int c = Long.compare(weight(b), weight(a));
+                        return c != 0 ? c : a.getName().compareTo(b.getName());
+                    })
+                    .limit(10)
+                    .map(Shop::getName)
+                    .collect(Collectors.toList());
+            List<String> actual = index.suggest(prefix, 10).stream()
+                    .filter(s -> ShopSuggestion.TYPE_SHOP.equals(s.getType()))
+                    .map(ShopSuggestion::getText)
+                    .collect(Collectors.toList());
+            // 商圈可能占掉名额，只比较店铺部分的前缀
+            assertEquals(expected.subList(0, actual.size()), actual, prefix);
+        }
+    }
+
+    /**
+     * 10万个店铺，随机1~3个字的前缀，每次取10个
+     */
+    @Test
+    @Tag("benchmark")
+    void benchmark() {
+        List<Shop> shops = randomShops(100000, 3);
+        ShopSuggestIndex index = new ShopSuggestIndex();
+        index.rebuild(shops);
+        Random random = new Random(4);
+        String[] prefixes = new String[1024];
+        for (int i = 0; i < prefixes.length; i++) {
+            String name = shops.get(random.nextInt(shops.size())).getName();
+            prefixes[i] = name.substring(0, 1 + random.nextInt(3));
+        }
+        int warmup = 50000;
+        int rounds = 200000;
+        int sink = 0;
+        for (int i = 0; i < warmup; i++) {
+            sink += index.suggest(prefixes[i & 1023], 10).size();
+        }
+        long begin = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            sink += index.suggest(prefixes[i & 1023], 10).size();
+        }
+        long nanos = System.nanoTime() - begin;
+        assertTrue(sink > 0);
+        System.out.println("前缀联想：" + nanos / rounds + "ns/次");
+    }
+
+    private static long weight(Shop shop) {
+        return (shop.getSold() + 1L) * shop.getScore();
+    }
+
+    // 名称由少量常用字随机组成，前缀会匹配到大量店铺
+    private static List<Shop> randomShops(int n, long seed) {
+        String chars = "老北京新白鹿海底捞火锅茶餐厅烤肉串面馆小吃酒家";
+        String[] areas = {"大关", "运河上街", "拱宸桥/上塘", "北部新城", "武林广场"};
+        Random random = new Random(seed);
+        List<Shop> shops = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            StringBuilder name = new StringBuilder();
+            int length = 4 + random.nextInt(6);
+            for (int j = 0; j < length; j++) {
+                name.append(chars.charAt(random.nextInt(chars.length())));
+            }
+            name.append(i);
+            shops.add(shop(i + 1, name.toString(), areas[random.nextInt(areas.length)],
+                    random.nextInt(20000), 10 + random.nextInt(41)));
+        }
+        return shops;
+    }
+
+    private static List<Long> ids(List<ShopSuggestion> suggestions) {
+        return suggestions.stream().map(ShopSuggestion::getShopId).collect(Collectors.toList());
+    }
+}
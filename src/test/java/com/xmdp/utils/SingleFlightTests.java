@@ -0,0 +1,84 @@
+package com.xmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTests {
+
+    @Test
+    void testConcurrentCallsLoadOnce() throws InterruptedException {
+        SingleFlight singleFlight = new SingleFlight();
+        AtomicInteger loads = new AtomicInteger();
+        AtomicInteger results = new AtomicInteger();
+        int threads = 50;
+        ExecutorService es = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            es.submit(() -> {
+                try {
+                    start.await();
+                    String value = singleFlight.execute("cache:shop:1", () -> {
+                        loads.incrementAndGet();
+                        sleep(300);
+                        return "shop-1";
+                    }, 3, TimeUnit.SECONDS);
+                    if ("shop-1".equals(value)) {
+                        results.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        es.shutdown();
+        assertEquals(1, loads.get());
+        assertEquals(threads, results.get());
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    void testLeaderExceptionPropagates() {
+        SingleFlight singleFlight = new SingleFlight();
+        assertThrows(IllegalStateException.class, () -> singleFlight.execute("k", () -> {
+            throw new IllegalStateException("db down");
+        }, 1, TimeUnit.SECONDS));
+        // 失败之后不会残留，下一次可以重新加载
+        assertEquals("ok", singleFlight.execute("k", () -> "ok", 1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testFollowerTimeout() throws InterruptedException {
+        SingleFlight singleFlight = new SingleFlight();
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        Thread leader = new Thread(() -> singleFlight.execute("slow", () -> {
+            leaderStarted.countDown();
+            sleep(500);
+            return "slow";
+        }, 1, TimeUnit.SECONDS));
+        leader.start();
+        leaderStarted.await();
+        assertThrows(RuntimeException.class,
+                () -> singleFlight.execute("slow", () -> "follower", 50, TimeUnit.MILLISECONDS));
+        leader.join();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}